@@ -0,0 +1,9 @@
+-- Receiver response bodies are captured up to RESPONSE_BODY_MAX_BYTES; keep the real size
+-- and whether the stored body was cut.
+ALTER TABLE webhook_deliveries
+  ADD COLUMN IF NOT EXISTS response_body_length bigint,
+  ADD COLUMN IF NOT EXISTS response_body_truncated boolean NOT NULL DEFAULT false;
+
+ALTER TABLE webhook_delivery_audit_logs
+  ADD COLUMN IF NOT EXISTS response_body_length bigint,
+  ADD COLUMN IF NOT EXISTS response_body_truncated boolean NOT NULL DEFAULT false;
@@ -0,0 +1,41 @@
+-- Range-partition webhook_delivery_audit_logs by logged_at. The existing rows become a single
+-- legacy partition covering everything before the cutover (the migration's start time); new
+-- daily/monthly partitions are created ahead of time by AuditLogMaintenanceLambda and, as a
+-- fallback, by the writer itself. The first of them starts exactly at the cutover, and the
+-- legacy partition is archived like the others once the cutover is past the retention window.
+BEGIN;
+
+ALTER TABLE webhook_delivery_audit_logs RENAME TO webhook_delivery_audit_logs_legacy;
+
+CREATE TABLE webhook_delivery_audit_logs (
+  LIKE webhook_delivery_audit_logs_legacy INCLUDING DEFAULTS
+) PARTITION BY RANGE (logged_at);
+
+DO $$
+DECLARE
+  seq text := pg_get_serial_sequence('webhook_delivery_audit_logs_legacy', 'id');
+  -- Written as an explicit UTC literal so the bounds don't depend on the session TimeZone
+  cutover text := to_char(now() AT TIME ZONE 'UTC', 'YYYY-MM-DD HH24:MI:SS.US') || '+00';
+BEGIN
+  -- The id default is shared with the new parent; keep the sequence alive when the legacy
+  -- partition is eventually archived and dropped.
+  IF seq IS NOT NULL THEN
+    EXECUTE format('ALTER SEQUENCE %s OWNED BY NONE', seq);
+  END IF;
+
+  -- Adding the CHECK scans the legacy rows once. It proves both NOT NULL and the partition
+  -- bound, so SET NOT NULL and ATTACH PARTITION skip their own scans. The scan still runs under
+  -- the ACCESS EXCLUSIVE lock taken by the rename, so audit writes wait for it.
+  EXECUTE format(
+    'ALTER TABLE webhook_delivery_audit_logs_legacy ADD CONSTRAINT audit_logs_legacy_range '
+      || 'CHECK (logged_at IS NOT NULL AND logged_at < %L::timestamptz)', cutover);
+  ALTER TABLE webhook_delivery_audit_logs_legacy ALTER COLUMN logged_at SET NOT NULL;
+  EXECUTE format(
+    'ALTER TABLE webhook_delivery_audit_logs ATTACH PARTITION webhook_delivery_audit_logs_legacy '
+      || 'FOR VALUES FROM (MINVALUE) TO (%L)', cutover);
+END $$;
+
+CREATE INDEX IF NOT EXISTS idx_webhook_delivery_audit_logs_delivery_id
+  ON webhook_delivery_audit_logs (delivery_id, logged_at);
+
+COMMIT;
@@ -0,0 +1,6 @@
+-- Retries longer than the 15 minute SQS delay are parked as SCHEDULED and claimed by
+-- RetrySweeperLambda once next_retry_at has passed. The partial index keeps that scan limited
+-- to parked rows. CONCURRENTLY: run outside a transaction.
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_webhook_deliveries_scheduled_next_retry
+  ON webhook_deliveries (next_retry_at)
+  WHERE status = 'SCHEDULED';
@@ -0,0 +1,31 @@
+-- Store payloads and bodies compressed. Postgres compresses these columns transparently in
+-- TOAST and decompresses on read, so no application change is needed for reads or writes.
+-- lz4 (PG 14+) is much cheaper than the default pglz on both paths. A lower toast_tuple_target
+-- makes rows from ~512 bytes on eligible for compression instead of ~2 KB.
+-- Existing rows keep their current encoding until rewritten.
+ALTER TABLE webhook_deliveries
+  ALTER COLUMN payload SET COMPRESSION lz4,
+  ALTER COLUMN response_body SET COMPRESSION lz4;
+
+ALTER TABLE webhook_deliveries SET (toast_tuple_target = 512);
+
+-- Recurses to the existing partitions; partitions created later inherit the column setting and
+-- get toast_tuple_target from AuditLogPartitionManager (a partitioned parent has no storage).
+ALTER TABLE webhook_delivery_audit_logs
+  ALTER COLUMN request_body SET COMPRESSION lz4,
+  ALTER COLUMN response_body SET COMPRESSION lz4;
+
+DO $$
+DECLARE
+  partition regclass;
+BEGIN
+  FOR partition IN
+    SELECT i.inhrelid::regclass FROM pg_inherits i
+    WHERE i.inhparent = 'webhook_delivery_audit_logs'::regclass
+  LOOP
+    EXECUTE format('ALTER TABLE %s SET (toast_tuple_target = 512)', partition);
+  END LOOP;
+END $$;
+
+-- WAL for these rows carries the compressed values; full page images can additionally be
+-- compressed server-side with wal_compression = lz4 (parameter group setting, not set here).
@@ -0,0 +1,20 @@
+-- Payloads are stored once per distinct content, keyed by the hex SHA-256 of their UTF-8 bytes.
+-- Deliveries and audit rows reference them by payload_hash instead of carrying a copy; rows
+-- written before this migration keep their inline payload/request_body.
+CREATE TABLE IF NOT EXISTS webhook_payloads (
+  hash char(64) PRIMARY KEY,
+  payload text NOT NULL,
+  created_at timestamptz NOT NULL DEFAULT now()
+);
+
+ALTER TABLE webhook_payloads ALTER COLUMN payload SET COMPRESSION lz4;
+
+ALTER TABLE webhook_deliveries
+  ADD COLUMN IF NOT EXISTS payload_hash char(64),
+  ALTER COLUMN payload DROP NOT NULL;
+
+ALTER TABLE webhook_delivery_audit_logs
+  ADD COLUMN IF NOT EXISTS payload_hash char(64);
+
+CREATE INDEX IF NOT EXISTS idx_webhook_deliveries_payload_hash
+  ON webhook_deliveries (payload_hash);
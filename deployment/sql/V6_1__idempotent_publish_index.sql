@@ -0,0 +1,4 @@
+-- Conflict target of the publisher's idempotent insert (see V6). CONCURRENTLY: run outside a
+-- transaction.
+CREATE UNIQUE INDEX CONCURRENTLY IF NOT EXISTS uq_webhook_deliveries_event_endpoint
+  ON webhook_deliveries (event_id, webhook_endpoint_id);
@@ -0,0 +1,9 @@
+-- Publisher ingestion is idempotent per (event id, endpoint): a redelivered or partially
+-- processed event finds its existing deliveries instead of creating new ones. enqueued_at marks
+-- deliveries whose SQS message was sent, so only the missing ones are sent again.
+-- NULL event ids (events without an id, rows from before this migration) never conflict, so
+-- the enqueued_at of existing rows is never read and they are left NULL: no table rewrite.
+-- The unique index is created by V6_1, outside a transaction.
+ALTER TABLE webhook_deliveries
+  ADD COLUMN IF NOT EXISTS event_id text,
+  ADD COLUMN IF NOT EXISTS enqueued_at timestamptz;
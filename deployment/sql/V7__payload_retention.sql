@@ -0,0 +1,6 @@
+-- Payloads are deleted by AuditLogMaintenanceLambda once no live delivery and no retained audit
+-- log partition references them (archived partitions carry theirs in a .payloads.csv.gz file).
+-- referenced_at is bumped whenever the publisher stores a payload again, so a payload that is
+-- being reused is never deleted under it. now() is evaluated once: no table rewrite.
+ALTER TABLE webhook_payloads
+  ADD COLUMN IF NOT EXISTS referenced_at timestamptz NOT NULL DEFAULT now();
@@ -0,0 +1,68 @@
+package com.payintelli.webhook.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import com.payintelli.webhook.models.WebhookEndpoint;
+
+/** Deterministic fixtures shared by the benchmarks. */
+final class BenchmarkData {
+  static final String SECRET = "whsec_4f1c2b7e9a0d3c5e8b6a1f2d7c9e0b3a";
+
+  private static final String[] EVENT_TYPES = {"payment.succeeded", "payment.failed",
+      "payment.refunded", "payout.paid", "payout.failed", "customer.created", "customer.updated",
+      "invoice.paid"};
+
+  private BenchmarkData() {
+  }
+
+  /** A JSON object of roughly {@code bytes} bytes, shaped like a payment event. */
+  static String payload(int bytes) {
+    StringBuilder json = new StringBuilder(bytes + 64);
+    json.append("{\"id\":\"pay_1N2b3C4d5E6f\",\"amount\":12050,\"currency\":\"EUR\",")
+        .append("\"status\":\"succeeded\",\"metadata\":{");
+    int i = 0;
+    while (json.length() < bytes) {
+      if (i > 0) {
+        json.append(',');
+      }
+      json.append("\"key").append(i).append("\":\"value-").append(i).append("-abcdefghij\"");
+      i++;
+    }
+    return json.append("}}").toString();
+  }
+
+  /**
+   * {@code count} active endpoints spread over {@code count / 10} clients (at least one). Every
+   * fifth endpoint subscribes with a wildcard, the rest to two exact event types.
+   */
+  static List<WebhookEndpoint> endpoints(int count) {
+    Random random = new Random(42);
+    int clients = Math.max(1, count / 10);
+    List<WebhookEndpoint> endpoints = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      WebhookEndpoint endpoint = new WebhookEndpoint();
+      endpoint.setId((long) i + 1);
+      endpoint.setClientId(clientId(i % clients));
+      endpoint.setUrl("https://hooks.example.com/" + i);
+      endpoint.setSecret(SECRET);
+      endpoint.setIsActive(true);
+      if (i % 5 == 0) {
+        endpoint.setEvents("[\"payment.*\"]");
+      } else {
+        endpoint.setEvents("[\"" + EVENT_TYPES[random.nextInt(EVENT_TYPES.length)] + "\",\""
+            + EVENT_TYPES[random.nextInt(EVENT_TYPES.length)] + "\"]");
+      }
+      endpoints.add(endpoint);
+    }
+    return endpoints;
+  }
+
+  static String clientId(int index) {
+    return "client-" + index;
+  }
+
+  static String eventType(int index) {
+    return EVENT_TYPES[index % EVENT_TYPES.length];
+  }
+}
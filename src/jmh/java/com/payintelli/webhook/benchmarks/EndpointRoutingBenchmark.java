@@ -0,0 +1,53 @@
+package com.payintelli.webhook.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payintelli.webhook.models.WebhookEndpoint;
+import com.payintelli.webhook.services.EndpointRoutingIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Endpoint filtering as done by WebhookDynamoDbService: building the routing index from a
+ * config snapshot, and resolving the subscribers of an event against it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EndpointRoutingBenchmark {
+
+  @Param({"100", "10000", "100000"})
+  int endpointCount;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private List<WebhookEndpoint> endpoints;
+  private EndpointRoutingIndex index;
+  private int clients;
+  private int next;
+
+  @Setup
+  public void setup() {
+    endpoints = BenchmarkData.endpoints(endpointCount);
+    index = EndpointRoutingIndex.build(endpoints, objectMapper);
+    clients = Math.max(1, endpointCount / 10);
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  public EndpointRoutingIndex buildIndex() {
+    return EndpointRoutingIndex.build(endpoints, objectMapper);
+  }
+
+  @Benchmark
+  public List<WebhookEndpoint> find() {
+    int i = next++;
+    return index.find(BenchmarkData.clientId(i % clients), BenchmarkData.eventType(i));
+  }
+}
@@ -0,0 +1,100 @@
+package com.payintelli.webhook.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import com.payintelli.webhook.models.WebhookDeliveryMessage;
+import com.payintelli.webhook.models.WebhookEndpoint;
+import com.payintelli.webhook.models.WebhookResponseBody;
+import com.payintelli.webhook.services.WebhookHttpService;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+/**
+ * WebhookHttpService.sendWebhook against an in-process HTTP server on the loopback interface,
+ * so the result covers signing, request building, the connection pool and response handling
+ * without network variance.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class HttpDeliveryBenchmark {
+  private static final byte[] RESPONSE = "{\"received\":true}".getBytes(StandardCharsets.UTF_8);
+
+  @Param({"256", "4096", "65536"})
+  int payloadBytes;
+
+  @Param({"none", "gzip"})
+  String requestEncoding;
+
+  private HttpServer server;
+  private WebhookHttpService httpService;
+  private WebhookEndpoint endpoint;
+  private WebhookDeliveryMessage message;
+
+  @Setup
+  public void setup() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/webhook", exchange -> {
+      try (InputStream in = exchange.getRequestBody()) {
+        in.transferTo(OutputStream.nullOutputStream());
+      }
+      exchange.getResponseHeaders().add("Content-Type", "application/json");
+      exchange.sendResponseHeaders(200, RESPONSE.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(RESPONSE);
+      }
+    });
+    server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    server.start();
+
+    httpService = new WebhookHttpService();
+    endpoint = new WebhookEndpoint();
+    endpoint.setId(1L);
+    endpoint.setClientId("client-1");
+    endpoint.setUrl("http://127.0.0.1:" + server.getAddress().getPort() + "/webhook");
+    endpoint.setSecret(BenchmarkData.SECRET);
+    endpoint.setIsActive(true);
+    endpoint.setRequestEncoding(requestEncoding);
+    message = new WebhookDeliveryMessage(1L, 1L, "payment.succeeded",
+        BenchmarkData.payload(payloadBytes), 1);
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.stop(0);
+  }
+
+  @Benchmark
+  public int sendWebhook() throws Exception {
+    return send();
+  }
+
+  @Benchmark
+  @Threads(8)
+  public int sendWebhookConcurrent() throws Exception {
+    return send();
+  }
+
+  private int send() throws Exception {
+    HttpResponse<WebhookResponseBody> response = httpService.sendWebhook(endpoint, message);
+    if (response.statusCode() != 200) {
+      throw new IllegalStateException("Unexpected status " + response.statusCode());
+    }
+    return response.statusCode();
+  }
+}
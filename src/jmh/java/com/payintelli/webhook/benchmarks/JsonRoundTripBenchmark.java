@@ -0,0 +1,95 @@
+package com.payintelli.webhook.benchmarks;
+
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.payintelli.webhook.models.WebhookDeliveryMessage;
+import com.payintelli.webhook.models.WebhookPublisherMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Jackson (de)serialization of the two queue message types, configured like the handlers'
+ * mappers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JsonRoundTripBenchmark {
+
+  @Param({"256", "4096", "65536"})
+  int payloadBytes;
+
+  private ObjectWriter deliveryWriter;
+  private ObjectReader deliveryReader;
+  private ObjectWriter publisherWriter;
+  private ObjectReader publisherReader;
+  private WebhookDeliveryMessage deliveryMessage;
+  private WebhookPublisherMessage publisherMessage;
+  private String deliveryJson;
+  private String publisherJson;
+
+  @Setup
+  public void setup() throws Exception {
+    ObjectMapper objectMapper = new ObjectMapper();
+    objectMapper.registerModule(new JavaTimeModule());
+    objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    deliveryWriter = objectMapper.writerFor(WebhookDeliveryMessage.class);
+    deliveryReader = objectMapper.readerFor(WebhookDeliveryMessage.class);
+    publisherWriter = objectMapper.writerFor(WebhookPublisherMessage.class);
+    publisherReader = objectMapper.readerFor(WebhookPublisherMessage.class);
+
+    String payload = BenchmarkData.payload(payloadBytes);
+    deliveryMessage = new WebhookDeliveryMessage(123456L, 42L, "payment.succeeded", payload, 1);
+    publisherMessage = new WebhookPublisherMessage();
+    publisherMessage.setId("evt_1N2b3C4d5E6f");
+    publisherMessage.setClientId("client-1");
+    publisherMessage.setEventType("payment.succeeded");
+    publisherMessage.setCreatedAt(Instant.parse("2024-01-01T00:00:00Z"));
+    publisherMessage.setData(payload);
+
+    deliveryJson = deliveryWriter.writeValueAsString(deliveryMessage);
+    publisherJson = publisherWriter.writeValueAsString(publisherMessage);
+  }
+
+  @Benchmark
+  public String writeDeliveryMessage() throws Exception {
+    return deliveryWriter.writeValueAsString(deliveryMessage);
+  }
+
+  @Benchmark
+  public WebhookDeliveryMessage readDeliveryMessage() throws Exception {
+    return deliveryReader.readValue(deliveryJson);
+  }
+
+  @Benchmark
+  public WebhookDeliveryMessage roundTripDeliveryMessage() throws Exception {
+    return deliveryReader.readValue(deliveryWriter.writeValueAsString(deliveryMessage));
+  }
+
+  @Benchmark
+  public String writePublisherMessage() throws Exception {
+    return publisherWriter.writeValueAsString(publisherMessage);
+  }
+
+  @Benchmark
+  public WebhookPublisherMessage readPublisherMessage() throws Exception {
+    return publisherReader.readValue(publisherJson);
+  }
+
+  @Benchmark
+  public WebhookPublisherMessage roundTripPublisherMessage() throws Exception {
+    return publisherReader.readValue(publisherWriter.writeValueAsString(publisherMessage));
+  }
+}
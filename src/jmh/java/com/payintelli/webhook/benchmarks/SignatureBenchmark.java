@@ -0,0 +1,53 @@
+package com.payintelli.webhook.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import com.payintelli.webhook.utils.WebhookSignatureUtils;
+import com.payintelli.webhook.utils.WebhookSigner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * HMAC signing of a delivery body: the static utility, which builds a new Mac per call, against
+ * the cached per-endpoint signer the delivery path uses.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SignatureBenchmark {
+
+  @Param({"256", "4096", "65536"})
+  int payloadBytes;
+
+  private String payload;
+  private byte[] body;
+  private WebhookSigner signer;
+
+  @Setup
+  public void setup() {
+    payload = BenchmarkData.payload(payloadBytes);
+    body = payload.getBytes(StandardCharsets.UTF_8);
+    signer = new WebhookSigner();
+  }
+
+  @Benchmark
+  public String generateSignature() throws Exception {
+    return WebhookSignatureUtils.generateSignature(payload, BenchmarkData.SECRET);
+  }
+
+  @Benchmark
+  public String cachedSigner() throws Exception {
+    return signer.sign(1L, BenchmarkData.SECRET, body);
+  }
+
+  @Benchmark
+  public String cachedSignerTimestamped() throws Exception {
+    return signer.signTimestamped(1L, BenchmarkData.SECRET, 1700000000L, body);
+  }
+}
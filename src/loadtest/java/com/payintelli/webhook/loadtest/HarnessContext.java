@@ -0,0 +1,85 @@
+package com.payintelli.webhook.loadtest;
+
+import java.util.UUID;
+import com.amazonaws.services.lambda.runtime.ClientContext;
+import com.amazonaws.services.lambda.runtime.CognitoIdentity;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.LambdaLogger;
+
+/** Lambda context for handlers invoked by the harness; logging is dropped unless verbose. */
+final class HarnessContext implements Context {
+  private final String functionName;
+  private final LambdaLogger logger;
+
+  HarnessContext(String functionName, boolean verbose) {
+    this.functionName = functionName;
+    this.logger = new LambdaLogger() {
+      @Override
+      public void log(String message) {
+        if (verbose) {
+          System.out.println("[" + functionName + "] " + message);
+        }
+      }
+
+      @Override
+      public void log(byte[] message) {
+        log(new String(message));
+      }
+    };
+  }
+
+  @Override
+  public String getAwsRequestId() {
+    return UUID.randomUUID().toString();
+  }
+
+  @Override
+  public String getLogGroupName() {
+    return "/loadtest/" + functionName;
+  }
+
+  @Override
+  public String getLogStreamName() {
+    return functionName;
+  }
+
+  @Override
+  public String getFunctionName() {
+    return functionName;
+  }
+
+  @Override
+  public String getFunctionVersion() {
+    return "$LATEST";
+  }
+
+  @Override
+  public String getInvokedFunctionArn() {
+    return "arn:aws:lambda:local:000000000000:function:" + functionName;
+  }
+
+  @Override
+  public CognitoIdentity getIdentity() {
+    return null;
+  }
+
+  @Override
+  public ClientContext getClientContext() {
+    return null;
+  }
+
+  @Override
+  public int getRemainingTimeInMillis() {
+    return 300_000;
+  }
+
+  @Override
+  public int getMemoryLimitInMB() {
+    return 1024;
+  }
+
+  @Override
+  public LambdaLogger getLogger() {
+    return logger;
+  }
+}
@@ -0,0 +1,227 @@
+package com.payintelli.webhook.loadtest;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import com.payintelli.webhook.models.WebhookDelivery;
+import com.payintelli.webhook.models.WebhookDeliveryAuditLog;
+import com.payintelli.webhook.models.WebhookDeliveryMessage;
+import com.payintelli.webhook.models.WebhookResponseBody;
+import com.payintelli.webhook.services.DeliveryRepository;
+
+/**
+ * Delivery rows kept in memory with the same idempotency rule as Postgres: one row per
+ * (event id, endpoint). Retry times of SCHEDULED rows are compressed by {@code delayScale}, like
+ * the queue's delays. Audit rows are only counted.
+ */
+final class InMemoryDeliveryRepository implements DeliveryRepository {
+  private final Map<Long, Row> rows = new ConcurrentHashMap<>();
+  private final Map<String, Long> idsByEventAndEndpoint = new ConcurrentHashMap<>();
+  private final Map<String, String> payloads = new ConcurrentHashMap<>();
+  private final AtomicLong ids = new AtomicLong();
+  private final LongAdder auditLogs = new LongAdder();
+  private final double delayScale;
+
+  InMemoryDeliveryRepository(double delayScale) {
+    this.delayScale = delayScale;
+  }
+
+  @Override
+  public synchronized List<Long> createWebhookDeliveries(List<WebhookDelivery> deliveries) {
+    List<Long> created = new ArrayList<>(deliveries.size());
+    for (WebhookDelivery delivery : deliveries) {
+      String key = delivery.getEventId() + "/" + delivery.getWebhookEndpointId();
+      Long id = delivery.getEventId() != null ? idsByEventAndEndpoint.get(key) : null;
+      if (id == null) {
+        Row row = new Row();
+        row.id = ids.incrementAndGet();
+        row.endpointId = delivery.getWebhookEndpointId();
+        row.eventType = delivery.getEventType();
+        row.payloadHash = delivery.getPayloadHash();
+        row.payload = delivery.getPayloadHash() != null ? null : delivery.getPayload();
+        row.status = delivery.getStatus();
+        row.attemptCount = delivery.getAttemptCount();
+        rows.put(row.id, row);
+        if (delivery.getEventId() != null) {
+          idsByEventAndEndpoint.put(key, row.id);
+        }
+        if (delivery.getPayloadHash() != null) {
+          payloads.putIfAbsent(delivery.getPayloadHash(), delivery.getPayload());
+        }
+        auditLogs.increment();
+        id = row.id;
+      }
+      delivery.setId(id);
+      delivery.setEnqueuedAt(rows.get(id).enqueuedAt);
+      created.add(id);
+    }
+    return created;
+  }
+
+  @Override
+  public void markDeliveriesEnqueued(List<Long> deliveryIds) {
+    Timestamp now = new Timestamp(System.currentTimeMillis());
+    for (Long id : deliveryIds) {
+      Row row = rows.get(id);
+      synchronized (row) {
+        row.enqueuedAt = now;
+      }
+    }
+  }
+
+  @Override
+  public Set<Long> findDeliveredIds(List<Long> deliveryIds) {
+    Set<Long> delivered = new HashSet<>();
+    for (Long id : deliveryIds) {
+      Row row = rows.get(id);
+      if (row != null && "DELIVERED".equals(row.status)) {
+        delivered.add(id);
+      }
+    }
+    return delivered;
+  }
+
+  @Override
+  public String findPayload(String hash) {
+    return payloads.get(hash);
+  }
+
+  @Override
+  public Map<String, String> findPayloads(Collection<String> hashes) {
+    Map<String, String> found = new HashMap<>();
+    for (String hash : hashes) {
+      String payload = payloads.get(hash);
+      if (payload != null) {
+        found.put(hash, payload);
+      }
+    }
+    return found;
+  }
+
+  @Override
+  public void updateDeliveryState(Long deliveryId, Integer responseStatus,
+      WebhookResponseBody response, String status, Timestamp nextRetryAt, Integer attemptCount) {
+    Row row = rows.get(deliveryId);
+    synchronized (row) {
+      if ("DELIVERED".equals(row.status)) {
+        return;
+      }
+      row.status = status;
+      row.nextRetryAt = scale(status, nextRetryAt);
+      row.attemptCount = attemptCount;
+    }
+  }
+
+  @Override
+  public void updateDeliveryStatus(Long deliveryId, String status, Timestamp nextRetryAt,
+      Integer attemptCount) {
+    Row row = rows.get(deliveryId);
+    synchronized (row) {
+      if ("DELIVERED".equals(row.status)) {
+        return;
+      }
+      row.status = status;
+      row.nextRetryAt = scale(status, nextRetryAt);
+      row.attemptCount = attemptCount;
+    }
+  }
+
+  @Override
+  public synchronized int dispatchDueRetries(int limit, RetryDispatcher dispatcher)
+      throws Exception {
+    long now = System.currentTimeMillis();
+    List<WebhookDeliveryMessage> due = new ArrayList<>();
+    for (Row row : rows.values()) {
+      if (due.size() == limit) {
+        break;
+      }
+      synchronized (row) {
+        if ("SCHEDULED".equals(row.status) && row.nextRetryAt.getTime() <= now) {
+          WebhookDeliveryMessage message = new WebhookDeliveryMessage(row.id, row.endpointId,
+              row.eventType, row.payload, row.attemptCount + 1);
+          message.setPayloadHash(row.payloadHash);
+          due.add(message);
+        }
+      }
+    }
+    if (!due.isEmpty()) {
+      Set<Long> enqueued = new HashSet<>(dispatcher.dispatch(due));
+      for (WebhookDeliveryMessage message : due) {
+        Row row = rows.get(message.getDeliveryId());
+        synchronized (row) {
+          if (enqueued.contains(row.id)) {
+            row.status = "PENDING";
+          } else {
+            row.nextRetryAt = scale("SCHEDULED", new Timestamp(now + 300_000));
+          }
+        }
+      }
+    }
+    return due.size();
+  }
+
+  @Override
+  public void insertWebhookDeliveryLogs(List<WebhookDeliveryAuditLog> logs) {
+    auditLogs.add(logs.size());
+  }
+
+  long deliveryCount() {
+    return rows.size();
+  }
+
+  long auditLogCount() {
+    return auditLogs.sum();
+  }
+
+  /** Number of deliveries per status. */
+  Map<String, Long> countByStatus() {
+    Map<String, Long> counts = new TreeMap<>();
+    for (Row row : rows.values()) {
+      synchronized (row) {
+        counts.merge(row.status, 1L, Long::sum);
+      }
+    }
+    return counts;
+  }
+
+  /** True while any delivery is waiting for the sweeper. */
+  boolean hasScheduled() {
+    for (Row row : rows.values()) {
+      synchronized (row) {
+        if ("SCHEDULED".equals(row.status)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private Timestamp scale(String status, Timestamp nextRetryAt) {
+    if (!"SCHEDULED".equals(status) || nextRetryAt == null) {
+      return nextRetryAt;
+    }
+    long now = System.currentTimeMillis();
+    return new Timestamp(now + (long) ((nextRetryAt.getTime() - now) * delayScale));
+  }
+
+  private static final class Row {
+    long id;
+    Long endpointId;
+    String eventType;
+    String payload;
+    String payloadHash;
+    String status;
+    Timestamp nextRetryAt;
+    Integer attemptCount;
+    Timestamp enqueuedAt;
+  }
+}
@@ -0,0 +1,44 @@
+package com.payintelli.webhook.loadtest;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payintelli.webhook.models.WebhookEndpoint;
+import com.payintelli.webhook.services.EndpointRoutingIndex;
+import com.payintelli.webhook.services.EndpointStore;
+
+/** Fixed endpoint configuration, routed through the same index as the DynamoDB store. */
+final class InMemoryEndpointStore implements EndpointStore {
+  private final EndpointRoutingIndex routing;
+  private final Map<Long, WebhookEndpoint> byId;
+  private final Map<Long, Long> circuitOpenUntil = new ConcurrentHashMap<>();
+
+  InMemoryEndpointStore(List<WebhookEndpoint> endpoints) {
+    this.routing = EndpointRoutingIndex.build(endpoints, new ObjectMapper());
+    this.byId = endpoints.stream()
+        .collect(Collectors.toUnmodifiableMap(WebhookEndpoint::getId, Function.identity()));
+  }
+
+  @Override
+  public List<WebhookEndpoint> findActiveEndpointsByEvent(String clientId, String eventType) {
+    return routing.find(clientId, eventType);
+  }
+
+  @Override
+  public WebhookEndpoint findEndpointById(Long endpointId) {
+    return byId.get(endpointId);
+  }
+
+  @Override
+  public long getCircuitOpenUntil(Long endpointId) {
+    return circuitOpenUntil.getOrDefault(endpointId, 0L);
+  }
+
+  @Override
+  public void putCircuitOpenUntil(Long endpointId, long openUntilMillis) {
+    circuitOpenUntil.put(endpointId, openUntilMillis);
+  }
+}
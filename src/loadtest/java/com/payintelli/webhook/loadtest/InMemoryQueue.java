@@ -0,0 +1,107 @@
+package com.payintelli.webhook.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payintelli.webhook.models.WebhookDeliveryMessage;
+import com.payintelli.webhook.services.DeliveryQueue;
+
+/**
+ * SQS stand-in: delayed messages, receive batches of up to {@code max} messages, and
+ * redelivery of messages a consumer reported as failed. Every delay is multiplied by
+ * {@code delayScale}, so retry and deferral delays of minutes play out in a short run. Large
+ * payloads become claim checks as on SQS (CLAIM_CHECK_MIN_BYTES).
+ */
+final class InMemoryQueue implements DeliveryQueue {
+  private final DelayQueue<Entry> entries = new DelayQueue<>();
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final AtomicLong messageIds = new AtomicLong();
+  private final AtomicLong outstanding = new AtomicLong();
+  private final double delayScale;
+  private final int claimCheckMinBytes;
+
+  InMemoryQueue(double delayScale) {
+    this.delayScale = delayScale;
+    this.claimCheckMinBytes = Integer.parseInt(System.getenv("CLAIM_CHECK_MIN_BYTES") != null
+        ? System.getenv("CLAIM_CHECK_MIN_BYTES")
+        : "61440");
+  }
+
+  @Override
+  public void send(WebhookDeliveryMessage message, int delaySeconds) throws Exception {
+    offer(objectMapper.writeValueAsString(message.forQueue(claimCheckMinBytes)),
+        TimeUnit.SECONDS.toMillis(delaySeconds));
+  }
+
+  @Override
+  public SendResult sendAll(List<WebhookDeliveryMessage> messages) throws Exception {
+    List<Long> enqueued = new ArrayList<>(messages.size());
+    for (WebhookDeliveryMessage message : messages) {
+      offer(objectMapper.writeValueAsString(message.forQueue(claimCheckMinBytes)), 0);
+      enqueued.add(message.getDeliveryId());
+    }
+    return new SendResult(enqueued, Map.of());
+  }
+
+  void offer(String body, long delayMillis) {
+    outstanding.incrementAndGet();
+    entries.add(new Entry("msg-" + messageIds.incrementAndGet(), body, readyAt(delayMillis)));
+  }
+
+  /** Waits up to {@code timeoutMillis} for a first message, then takes what else is ready. */
+  List<SQSEvent.SQSMessage> poll(int max, long timeoutMillis) throws InterruptedException {
+    Entry first = entries.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    if (first == null) {
+      return List.of();
+    }
+    List<Entry> taken = new ArrayList<>(max);
+    taken.add(first);
+    entries.drainTo(taken, max - 1);
+
+    List<SQSEvent.SQSMessage> messages = new ArrayList<>(taken.size());
+    for (Entry entry : taken) {
+      SQSEvent.SQSMessage message = new SQSEvent.SQSMessage();
+      message.setMessageId(entry.messageId());
+      message.setBody(entry.body());
+      messages.add(message);
+    }
+    return messages;
+  }
+
+  /** Removes a consumed message for good. */
+  void ack(SQSEvent.SQSMessage message) {
+    outstanding.decrementAndGet();
+  }
+
+  /** Makes a failed message visible again once {@code visibilityMillis} has passed. */
+  void nack(SQSEvent.SQSMessage message, long visibilityMillis) {
+    entries.add(new Entry(message.getMessageId(), message.getBody(), readyAt(visibilityMillis)));
+  }
+
+  /** Messages that are queued, delayed or being processed. */
+  long outstanding() {
+    return outstanding.get();
+  }
+
+  private long readyAt(long delayMillis) {
+    return System.nanoTime() + (long) (TimeUnit.MILLISECONDS.toNanos(delayMillis) * delayScale);
+  }
+
+  private record Entry(String messageId, String body, long readyAtNanos) implements Delayed {
+    @Override
+    public long getDelay(TimeUnit unit) {
+      return unit.convert(readyAtNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+      return Long.compare(readyAtNanos, ((Entry) other).readyAtNanos);
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package com.payintelli.webhook.loadtest;
+
+import java.util.Arrays;
+
+/** Collects latency samples in nanoseconds and reports percentiles from the sorted samples. */
+final class LatencyRecorder {
+  private long[] samples = new long[1 << 16];
+  private int count;
+
+  synchronized void record(long nanos) {
+    if (count == samples.length) {
+      samples = Arrays.copyOf(samples, count * 2);
+    }
+    samples[count++] = nanos;
+  }
+
+  synchronized Snapshot snapshot() {
+    long[] sorted = Arrays.copyOf(samples, count);
+    Arrays.sort(sorted);
+    return new Snapshot(sorted);
+  }
+
+  record Snapshot(long[] sorted) {
+    int count() {
+      return sorted.length;
+    }
+
+    /** Value at {@code percentile} (0-100) in milliseconds, 0 without samples. */
+    double percentileMillis(double percentile) {
+      if (sorted.length == 0) {
+        return 0;
+      }
+      int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+      return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    double maxMillis() {
+      return sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6;
+    }
+  }
+}
@@ -0,0 +1,283 @@
+package com.payintelli.webhook.loadtest;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
+import com.amazonaws.services.lambda.runtime.events.SQSEvent;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.payintelli.webhook.handlers.RetrySweeperLambda;
+import com.payintelli.webhook.handlers.WebhookDeliveryLambda;
+import com.payintelli.webhook.handlers.WebhookPublisherLambda;
+import com.payintelli.webhook.models.WebhookEndpoint;
+import com.payintelli.webhook.models.WebhookPublisherMessage;
+import com.payintelli.webhook.services.WebhookHttpService;
+
+/**
+ * Drives the publisher and delivery handlers end to end against in-memory fakes and a local
+ * receiver, and reports delivery throughput and publish-to-receipt latency.
+ *
+ * <p>Settings are {@code loadtest.*} system properties (passed as {@code -Ploadtest.x=y} to the
+ * Gradle {@code loadtest} task): rate (events/s), durationSeconds, fanout (endpoints per event),
+ * payloadBytes, receiverLatencyMs, receiverJitterMs, receiverFailureRate, receiverThrottleRate,
+ * publisherWorkers and deliveryWorkers (concurrent Lambda containers), batchSize (SQS records
+ * per invocation), delayScale (factor applied to queue and retry delays), drainSeconds and
+ * verbose. Handler settings such as DELIVERY_CONCURRENCY are read from the environment as in
+ * Lambda.
+ */
+public final class LoadHarness {
+  private static final String CLIENT_ID = "loadtest";
+  private static final String EVENT_TYPE = "loadtest.event";
+  private static final long VISIBILITY_TIMEOUT_MILLIS = 30_000;
+
+  private final double rate;
+  private final int durationSeconds;
+  private final int fanout;
+  private final int payloadBytes;
+  private final int publisherWorkers;
+  private final int deliveryWorkers;
+  private final int batchSize;
+  private final double delayScale;
+  private final int drainSeconds;
+  private final boolean verbose;
+
+  private final InMemoryQueue ingestQueue;
+  private final InMemoryQueue deliveryQueue;
+  private final InMemoryDeliveryRepository repository;
+  private final Receiver receiver;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final long[] publishedAt;
+  private final LatencyRecorder latency = new LatencyRecorder();
+  private final Set<Long> received = ConcurrentHashMap.newKeySet();
+  private final AtomicLong duplicates = new AtomicLong();
+  private final AtomicLong firstReceipt = new AtomicLong();
+  private final AtomicLong lastReceipt = new AtomicLong();
+  private final AtomicLong handlerErrors = new AtomicLong();
+  private final AtomicBoolean running = new AtomicBoolean(true);
+
+  private LoadHarness() throws Exception {
+    rate = Double.parseDouble(property("rate", "100"));
+    durationSeconds = Integer.parseInt(property("durationSeconds", "30"));
+    fanout = Integer.parseInt(property("fanout", "5"));
+    payloadBytes = Integer.parseInt(property("payloadBytes", "1024"));
+    publisherWorkers = Integer.parseInt(property("publisherWorkers", "2"));
+    deliveryWorkers = Integer.parseInt(property("deliveryWorkers", "8"));
+    batchSize = Integer.parseInt(property("batchSize", "10"));
+    delayScale = Double.parseDouble(property("delayScale", "0.01"));
+    drainSeconds = Integer.parseInt(property("drainSeconds", "60"));
+    verbose = Boolean.parseBoolean(property("verbose", "false"));
+    // Handler logs go through slf4j-simple, which must be configured before its first logger
+    if (!verbose && System.getProperty("org.slf4j.simpleLogger.defaultLogLevel") == null) {
+      System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+    }
+
+    ingestQueue = new InMemoryQueue(delayScale);
+    deliveryQueue = new InMemoryQueue(delayScale);
+    repository = new InMemoryDeliveryRepository(delayScale);
+    receiver = new Receiver(Long.parseLong(property("receiverLatencyMs", "20")),
+        Long.parseLong(property("receiverJitterMs", "10")),
+        Double.parseDouble(property("receiverFailureRate", "0")),
+        Double.parseDouble(property("receiverThrottleRate", "0")), this::onDelivered);
+    publishedAt = new long[(int) Math.ceil(rate * durationSeconds) + 1];
+
+    objectMapper.registerModule(new JavaTimeModule());
+    objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+  }
+
+  public static void main(String[] args) throws Exception {
+    LoadHarness harness = new LoadHarness();
+    try {
+      harness.run();
+    } finally {
+      harness.receiver.close();
+    }
+    System.exit(0);
+  }
+
+  private void run() throws Exception {
+    InMemoryEndpointStore endpointStore = new InMemoryEndpointStore(endpoints());
+    System.out.printf("Load test: %.0f events/s for %ds, fan-out %d, payload %d bytes%n", rate,
+        durationSeconds, fanout, payloadBytes);
+
+    List<Thread> workers = new ArrayList<>();
+    for (int i = 0; i < publisherWorkers; i++) {
+      WebhookPublisherLambda publisher =
+          new WebhookPublisherLambda(repository, endpointStore, deliveryQueue);
+      workers.add(startWorker("publisher-" + i, ingestQueue, publisher));
+    }
+    for (int i = 0; i < deliveryWorkers; i++) {
+      WebhookDeliveryLambda delivery = new WebhookDeliveryLambda(repository, endpointStore,
+          deliveryQueue, new WebhookHttpService());
+      workers.add(startWorker("delivery-" + i, deliveryQueue, delivery));
+    }
+    workers.add(startSweeper(new RetrySweeperLambda(repository, deliveryQueue)));
+
+    long start = System.nanoTime();
+    int published = produce(start);
+    long produced = System.nanoTime();
+
+    long drainDeadline = produced + TimeUnit.SECONDS.toNanos(drainSeconds);
+    while (System.nanoTime() < drainDeadline && (ingestQueue.outstanding() > 0
+        || deliveryQueue.outstanding() > 0 || repository.hasScheduled())) {
+      Thread.sleep(50);
+    }
+    long finished = System.nanoTime();
+    running.set(false);
+    for (Thread worker : workers) {
+      worker.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    report(published, start, produced, finished);
+  }
+
+  /** Publishes events at the configured rate and returns how many were published. */
+  private int produce(long start) throws Exception {
+    String padding = "x".repeat(Math.max(0, payloadBytes - 32));
+    long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+    for (int seq = 0; seq < publishedAt.length - 1; seq++) {
+      long due = start + seq * intervalNanos;
+      long wait = due - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(wait);
+      }
+
+      WebhookPublisherMessage event = new WebhookPublisherMessage();
+      event.setId("evt-" + seq);
+      event.setClientId(CLIENT_ID);
+      event.setEventType(EVENT_TYPE);
+      event.setCreatedAt(Instant.now());
+      event.setData("{\"seq\":" + seq + ",\"padding\":\"" + padding + "\"}");
+
+      publishedAt[seq] = System.nanoTime();
+      ingestQueue.offer(objectMapper.writeValueAsString(event), 0);
+    }
+    return publishedAt.length - 1;
+  }
+
+  private List<WebhookEndpoint> endpoints() {
+    List<WebhookEndpoint> endpoints = new ArrayList<>(fanout);
+    for (int i = 0; i < fanout; i++) {
+      WebhookEndpoint endpoint = new WebhookEndpoint();
+      endpoint.setId((long) i + 1);
+      endpoint.setClientId(CLIENT_ID);
+      endpoint.setUrl(receiver.url(i));
+      endpoint.setEvents("[\"" + EVENT_TYPE + "\"]");
+      endpoint.setSecret("whsec_loadtest_" + i);
+      endpoint.setIsActive(true);
+      endpoints.add(endpoint);
+    }
+    return endpoints;
+  }
+
+  /** Polls {@code queue} like a Lambda event source mapping and invokes {@code handler}. */
+  private Thread startWorker(String name, InMemoryQueue queue,
+      RequestHandler<SQSEvent, SQSBatchResponse> handler) {
+    Context context = new HarnessContext(name, verbose);
+    return Thread.ofPlatform().name(name).daemon().start(() -> {
+      while (running.get()) {
+        try {
+          List<SQSEvent.SQSMessage> messages = queue.poll(batchSize, 100);
+          if (messages.isEmpty()) {
+            continue;
+          }
+          SQSEvent event = new SQSEvent();
+          event.setRecords(messages);
+
+          Set<String> failed = ConcurrentHashMap.newKeySet();
+          try {
+            SQSBatchResponse response = handler.handleRequest(event, context);
+            for (SQSBatchResponse.BatchItemFailure failure : response.getBatchItemFailures()) {
+              failed.add(failure.getItemIdentifier());
+            }
+          } catch (RuntimeException e) {
+            handlerErrors.incrementAndGet();
+            messages.forEach(message -> failed.add(message.getMessageId()));
+          }
+          for (SQSEvent.SQSMessage message : messages) {
+            if (failed.contains(message.getMessageId())) {
+              queue.nack(message, VISIBILITY_TIMEOUT_MILLIS);
+            } else {
+              queue.ack(message);
+            }
+          }
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    });
+  }
+
+  /** Runs the sweeper once per scaled minute, but at least once a second. */
+  private Thread startSweeper(RetrySweeperLambda sweeper) {
+    Context context = new HarnessContext("sweeper", verbose);
+    long periodMillis = Math.max(1000, (long) (60_000 * delayScale));
+    return Thread.ofPlatform().name("sweeper").daemon().start(() -> {
+      while (running.get()) {
+        try {
+          sweeper.handleRequest(new ScheduledEvent(), context);
+        } catch (RuntimeException e) {
+          handlerErrors.incrementAndGet();
+        }
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(periodMillis));
+      }
+    });
+  }
+
+  private void onDelivered(int endpointIndex, long seq) {
+    long now = System.nanoTime();
+    if (!received.add(seq * fanout + endpointIndex)) {
+      duplicates.incrementAndGet();
+      return;
+    }
+    latency.record(now - publishedAt[(int) seq]);
+    firstReceipt.compareAndSet(0, now);
+    lastReceipt.accumulateAndGet(now, Math::max);
+  }
+
+  private void report(int published, long start, long produced, long finished) {
+    LatencyRecorder.Snapshot snapshot = latency.snapshot();
+    long expected = (long) published * fanout;
+    double deliverySeconds = (lastReceipt.get() - start) / 1e9;
+    Map<String, Long> statuses = repository.countByStatus();
+
+    System.out.println();
+    System.out.printf("Events published:      %d in %.1fs (%.1f/s)%n", published,
+        (produced - start) / 1e9, published / ((produced - start) / 1e9));
+    System.out.printf("Deliveries expected:   %d, created %d, statuses %s%n", expected,
+        repository.deliveryCount(), statuses);
+    System.out.printf("Delivered (unique):    %d (%.2f%%), duplicates %d%n", snapshot.count(),
+        expected > 0 ? 100.0 * snapshot.count() / expected : 0, duplicates.get());
+    System.out.printf("Receiver requests:     %d, 500s %d, 429s %d%n", receiver.requests(),
+        receiver.failures(), receiver.throttles());
+    System.out.printf("Throughput:            %.1f deliveries/s%n",
+        deliverySeconds > 0 ? snapshot.count() / deliverySeconds : 0);
+    System.out.printf("End-to-end latency:    p50 %.1f ms, p99 %.1f ms, p99.9 %.1f ms, "
+        + "max %.1f ms%n", snapshot.percentileMillis(50), snapshot.percentileMillis(99),
+        snapshot.percentileMillis(99.9), snapshot.maxMillis());
+    System.out.printf("Audit rows:            %d, handler errors %d%n",
+        repository.auditLogCount(), handlerErrors.get());
+    if (ingestQueue.outstanding() > 0 || deliveryQueue.outstanding() > 0) {
+      System.out.printf("Not drained after %ds: %d events, %d deliveries still queued%n",
+          drainSeconds, ingestQueue.outstanding(), deliveryQueue.outstanding());
+    }
+    System.out.printf("Total run time:        %.1fs%n", (finished - start) / 1e9);
+  }
+
+  private static String property(String name, String defaultValue) {
+    return System.getProperty("loadtest." + name, defaultValue);
+  }
+}
@@ -0,0 +1,147 @@
+package com.payintelli.webhook.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local webhook receiver on {@code /hooks/<endpoint index>}. Each request waits
+ * {@code latencyMillis} plus up to {@code jitterMillis}, then fails with 500 or 429 at the given
+ * rates and otherwise answers 200. For every accepted request the {@code "seq"} numbers in the
+ * body (one per delivered event, several for a batch) are reported to the listener.
+ */
+final class Receiver implements AutoCloseable {
+  private static final byte[] ACCEPTED = "{\"received\":true}".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] SEQ_FIELD = "\"seq\":".getBytes(StandardCharsets.US_ASCII);
+
+  /** Called once per event sequence number found in an accepted request. */
+  interface Listener {
+    void onDelivered(int endpointIndex, long seq);
+  }
+
+  private final HttpServer server;
+  private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+  private final long latencyMillis;
+  private final long jitterMillis;
+  private final double failureRate;
+  private final double throttleRate;
+  private final Listener listener;
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder throttles = new LongAdder();
+
+  Receiver(long latencyMillis, long jitterMillis, double failureRate, double throttleRate,
+      Listener listener) throws IOException {
+    this.latencyMillis = latencyMillis;
+    this.jitterMillis = jitterMillis;
+    this.failureRate = failureRate;
+    this.throttleRate = throttleRate;
+    this.listener = listener;
+    // Without TCP_NODELAY small responses wait for delayed ACKs (~40 ms each)
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+    this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+    this.server.createContext("/hooks/", this::handle);
+    this.server.setExecutor(executor);
+    this.server.start();
+  }
+
+  String url(int endpointIndex) {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/hooks/" + endpointIndex;
+  }
+
+  long requests() {
+    return requests.sum();
+  }
+
+  long failures() {
+    return failures.sum();
+  }
+
+  long throttles() {
+    return throttles.sum();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    requests.increment();
+    byte[] body;
+    try (InputStream in = "gzip".equalsIgnoreCase(
+        exchange.getRequestHeaders().getFirst("Content-Encoding"))
+            ? new GZIPInputStream(exchange.getRequestBody())
+            : exchange.getRequestBody()) {
+      body = in.readAllBytes();
+    }
+
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long wait = latencyMillis + (jitterMillis > 0 ? random.nextLong(jitterMillis + 1) : 0);
+    if (wait > 0) {
+      try {
+        Thread.sleep(wait);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    double roll = random.nextDouble();
+    if (roll < failureRate) {
+      failures.increment();
+      respond(exchange, 500, new byte[0]);
+      return;
+    }
+    if (roll < failureRate + throttleRate) {
+      throttles.increment();
+      exchange.getResponseHeaders().add("Retry-After", "1");
+      respond(exchange, 429, new byte[0]);
+      return;
+    }
+
+    String path = exchange.getRequestURI().getPath();
+    int endpointIndex = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+    for (int i = indexOf(body, 0); i >= 0; i = indexOf(body, i)) {
+      long seq = 0;
+      while (i < body.length && body[i] >= '0' && body[i] <= '9') {
+        seq = seq * 10 + (body[i++] - '0');
+      }
+      listener.onDelivered(endpointIndex, seq);
+    }
+    respond(exchange, 200, ACCEPTED);
+  }
+
+  private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+    exchange.getResponseHeaders().add("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, body.length > 0 ? body.length : -1);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+  /** Position right after the next {@code "seq":} at or after {@code from}, or -1. */
+  private static int indexOf(byte[] body, int from) {
+    outer:
+    for (int i = from; i <= body.length - SEQ_FIELD.length; i++) {
+      for (int j = 0; j < SEQ_FIELD.length; j++) {
+        if (body[i + j] != SEQ_FIELD[j]) {
+          continue outer;
+        }
+      }
+      return i + SEQ_FIELD.length;
+    }
+    return -1;
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+}
@@ -0,0 +1,62 @@
+package com.payintelli.webhook.handlers;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import com.payintelli.webhook.services.AuditLogPartitionManager;
+import com.payintelli.webhook.services.WebhookDatabaseService;
+
+/**
+ * Scheduled job that keeps the audit log partitions ahead of time and archives expired ones,
+ * then deletes the payloads nothing retained refers to any more. Archival and payload cleanup
+ * only run when AUDIT_ARCHIVE_DIR is set; without it expired partitions and payloads are kept.
+ */
+public class AuditLogMaintenanceLambda implements RequestHandler<ScheduledEvent, String> {
+
+  private final WebhookDatabaseService dbService;
+  private final AuditLogPartitionManager partitionManager;
+  private final int partitionsAhead;
+  private final Duration retention;
+  private final String archiveDir;
+
+  public AuditLogMaintenanceLambda() {
+    this.dbService = new WebhookDatabaseService(System.getenv("DATABASE_URL"),
+        System.getenv("DATABASE_USERNAME"), System.getenv("DATABASE_PASSWORD"));
+    this.partitionManager = dbService.getPartitionManager();
+    this.partitionsAhead = Integer.parseInt(System.getenv("AUDIT_PARTITIONS_AHEAD") != null
+        ? System.getenv("AUDIT_PARTITIONS_AHEAD")
+        : "3");
+    this.retention = Duration.ofDays(Long.parseLong(System.getenv("AUDIT_RETENTION_DAYS") != null
+        ? System.getenv("AUDIT_RETENTION_DAYS")
+        : "30"));
+    this.archiveDir = System.getenv("AUDIT_ARCHIVE_DIR");
+  }
+
+  @Override
+  public String handleRequest(ScheduledEvent event, Context context) {
+    try {
+      List<String> partitions = partitionManager.ensurePartitions(partitionsAhead);
+      context.getLogger().log("Ensured audit log partitions: " + partitions);
+
+      if (archiveDir == null || archiveDir.isBlank()) {
+        return "Ensured " + partitions.size() + " partitions, archival disabled";
+      }
+
+      List<Path> archived =
+          partitionManager.archiveExpiredPartitions(retention, Path.of(archiveDir));
+      context.getLogger().log("Archived audit log partitions: " + archived);
+
+      int payloads = dbService.deleteUnreferencedPayloads(
+          AuditLogPartitionManager.retentionCutoff(retention));
+      context.getLogger().log("Deleted unreferenced payloads: " + payloads);
+      return "Ensured " + partitions.size() + " partitions, archived " + archived.size()
+          + ", deleted " + payloads + " payloads";
+    } catch (Exception e) {
+      context.getLogger().log("Audit log maintenance failed: " + e.getMessage());
+      throw new RuntimeException("Audit log maintenance failed", e);
+    }
+  }
+}
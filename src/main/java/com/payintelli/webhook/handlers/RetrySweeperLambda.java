@@ -0,0 +1,72 @@
+package com.payintelli.webhook.handlers;
+
+import java.util.List;
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
+import com.payintelli.webhook.models.WebhookDeliveryMessage;
+import com.payintelli.webhook.services.DeliveryQueue;
+import com.payintelli.webhook.services.DeliveryRepository;
+import com.payintelli.webhook.services.SqsDeliveryQueue;
+import com.payintelli.webhook.services.WebhookDatabaseService;
+
+/**
+ * Scheduled job that re-enqueues retries whose delay is too long for an SQS delay
+ * (status SCHEDULED, next_retry_at due). Each sweep claims bounded batches of due rows and sends
+ * them to the delivery queue. Rows that reference a stored payload are sent as claim checks;
+ * the delivery function reads the payload back by its hash.
+ */
+public class RetrySweeperLambda implements RequestHandler<ScheduledEvent, String> {
+
+  private static final long MIN_REMAINING_MILLIS = 10_000;
+
+  private final DeliveryRepository dbService;
+  private final DeliveryQueue deliveryQueue;
+  private final int batchSize;
+  private final int maxBatches;
+
+  public RetrySweeperLambda() {
+    this(new WebhookDatabaseService(System.getenv("DATABASE_URL"),
+            System.getenv("DATABASE_USERNAME"), System.getenv("DATABASE_PASSWORD")),
+        new SqsDeliveryQueue(System.getenv("SQS_QUEUE_URL")));
+  }
+
+  public RetrySweeperLambda(DeliveryRepository dbService, DeliveryQueue deliveryQueue) {
+    this.dbService = dbService;
+    this.deliveryQueue = deliveryQueue;
+    this.batchSize = Integer.parseInt(System.getenv("SWEEPER_BATCH_SIZE") != null
+        ? System.getenv("SWEEPER_BATCH_SIZE")
+        : "500");
+    this.maxBatches = Integer.parseInt(System.getenv("SWEEPER_MAX_BATCHES") != null
+        ? System.getenv("SWEEPER_MAX_BATCHES")
+        : "20");
+  }
+
+  @Override
+  public String handleRequest(ScheduledEvent event, Context context) {
+    int claimed = 0;
+    try {
+      for (int i = 0; i < maxBatches; i++) {
+        int batch = dbService.dispatchDueRetries(batchSize, this::enqueue);
+        claimed += batch;
+        if (batch < batchSize || context.getRemainingTimeInMillis() < MIN_REMAINING_MILLIS) {
+          break;
+        }
+      }
+    } catch (Exception e) {
+      context.getLogger()
+          .log("Error sweeping due retries after " + claimed + ": " + e.getMessage());
+      throw new RuntimeException("Retry sweep failed", e);
+    }
+
+    context.getLogger().log("Swept " + claimed + " due retries");
+    return "Swept " + claimed + " due retries";
+  }
+
+  /** Sends {@code due} to the delivery queue and returns the ids it accepted. */
+  private List<Long> enqueue(List<WebhookDeliveryMessage> due) throws Exception {
+    // Rejected messages stay SCHEDULED and are picked up again by the next sweep; the queue
+    // logs why they were rejected
+    return deliveryQueue.sendAll(due).enqueued();
+  }
+}
@@ -1,192 +1,921 @@
 package com.payintelli.webhook.handlers;
 
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
-import java.time.ZoneId;
-import java.time.ZoneOffset;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
 import com.amazonaws.services.lambda.runtime.events.SQSEvent;
-import com.amazonaws.services.sqs.AmazonSQS;
-import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
-import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payintelli.webhook.models.WebhookDeliveryAuditLog;
 import com.payintelli.webhook.models.WebhookDeliveryMessage;
 import com.payintelli.webhook.models.WebhookEndpoint;
+import com.payintelli.webhook.models.WebhookResponseBody;
+import com.payintelli.webhook.services.DeliveryBatchAccumulator;
+import com.payintelli.webhook.services.DeliveryQueue;
+import com.payintelli.webhook.services.DeliveryRepository;
+import com.payintelli.webhook.services.EndpointCircuitBreaker;
+import com.payintelli.webhook.services.EndpointRateLimiter;
+import com.payintelli.webhook.services.EndpointStore;
+import com.payintelli.webhook.services.HostBusyException;
+import com.payintelli.webhook.services.SqsDeliveryQueue;
+import com.payintelli.webhook.services.WebhookAuditLogWriter;
 import com.payintelli.webhook.services.WebhookDatabaseService;
 import com.payintelli.webhook.services.WebhookDynamoDbService;
 import com.payintelli.webhook.services.WebhookHttpService;
-import com.payintelli.webhook.utils.RetryUtils;
+import com.payintelli.webhook.services.WebhookPayloadStore;
+import com.payintelli.webhook.utils.HeaderUtils;
+import com.payintelli.webhook.utils.InvocationMetrics;
+import com.payintelli.webhook.utils.JsonTextUtils;
+import com.payintelli.webhook.utils.RetryPolicy;
+import com.payintelli.webhook.utils.StructuredLogger;
+import org.crac.Core;
+import org.crac.Resource;
+
+public class WebhookDeliveryLambda
+    implements RequestHandler<SQSEvent, SQSBatchResponse>, Resource {
+  private static final StructuredLogger log =
+      StructuredLogger.getLogger(WebhookDeliveryLambda.class);
+  // The host's slots were taken for a whole request timeout; come back shortly after
+  private static final long HOST_BUSY_DEFER_MILLIS = 1000;
 
-import software.amazon.awssdk.services.scheduler.SchedulerClient;
-import software.amazon.awssdk.services.scheduler.model.CreateScheduleRequest;
-import software.amazon.awssdk.services.scheduler.model.FlexibleTimeWindow;
-import software.amazon.awssdk.services.scheduler.model.Target;
-
-public class WebhookDeliveryLambda implements RequestHandler<SQSEvent, String> {
-
-  private final AmazonSQS sqs = AmazonSQSClientBuilder.defaultClient();
   private final ObjectMapper objectMapper = new ObjectMapper();
-  private final WebhookDatabaseService dbService;
+  private final InvocationMetrics metrics = new InvocationMetrics("delivery");
+  private final DeliveryRepository dbService;
+  private final WebhookPayloadStore payloadStore;
+  private final DeliveryQueue deliveryQueue;
+  private final WebhookAuditLogWriter auditLogWriter;
   private final WebhookHttpService httpService;
-  private final String queueUrl;
-  private final int maxAttempts;
-  private final WebhookDynamoDbService webhookDynamoDbService;
+  private final EndpointCircuitBreaker circuitBreaker;
+  private final EndpointRateLimiter rateLimiter;
+  private final RetryPolicy retryPolicy;
+  private final int deliveryConcurrency;
+  private final int maxHeaders;
+  private final int maxHeaderValues;
+  private final int maxHeaderValueChars;
+  private final int batchMaxSize;
+  private final int batchMaxBytes;
+  private final long maxDeferralMillis;
+  private final long minRemainingMillis;
+  private final EndpointStore endpointStore;
+  // HTTP service counters at the end of the previous invocation (a container runs one at a time)
+  private long lastHttpRequests;
+  private long lastTlsHandshakes;
+  private long lastReusedConnections;
+  // Audit writer's dropped-row count at the end of the previous invocation
+  private long lastDroppedAuditRows;
+  // Set when restored from a SnapStart snapshot, cleared by the first delivery afterwards
+  private final AtomicLong restoredAtNanos = new AtomicLong();
 
   public WebhookDeliveryLambda() {
-    this.dbService = new WebhookDatabaseService(System.getenv("DATABASE_URL"),
-        System.getenv("DATABASE_USERNAME"), System.getenv("DATABASE_PASSWORD"));
-    this.httpService = new WebhookHttpService();
-    this.queueUrl = System.getenv("SQS_QUEUE_URL");
-    this.maxAttempts = Integer
-        .parseInt(System.getenv("MAX_ATTEMPTS") != null ? System.getenv("MAX_ATTEMPTS") : "5");
-    
-    this.webhookDynamoDbService = new WebhookDynamoDbService(System.getenv("DYNAMODB_TABLE_NAME"));
+    this(new WebhookDatabaseService(System.getenv("DATABASE_URL"),
+            System.getenv("DATABASE_USERNAME"), System.getenv("DATABASE_PASSWORD")),
+        new WebhookDynamoDbService(System.getenv("DYNAMODB_TABLE_NAME")),
+        new SqsDeliveryQueue(System.getenv("SQS_QUEUE_URL")), new WebhookHttpService());
+  }
+
+  public WebhookDeliveryLambda(DeliveryRepository dbService, EndpointStore endpointStore,
+      DeliveryQueue deliveryQueue, WebhookHttpService httpService) {
+    this.dbService = dbService;
+    this.payloadStore = new WebhookPayloadStore(dbService);
+    this.endpointStore = endpointStore;
+    this.deliveryQueue = deliveryQueue;
+    this.auditLogWriter = new WebhookAuditLogWriter(dbService);
+    this.httpService = httpService;
+    this.retryPolicy = RetryPolicy.fromEnv();
+    this.deliveryConcurrency = Integer.parseInt(System.getenv("DELIVERY_CONCURRENCY") != null
+        ? System.getenv("DELIVERY_CONCURRENCY")
+        : "10");
+    this.maxHeaders = Integer.parseInt(System.getenv("RESPONSE_HEADERS_MAX_COUNT") != null
+        ? System.getenv("RESPONSE_HEADERS_MAX_COUNT")
+        : "50");
+    this.maxHeaderValueChars = Integer.parseInt(
+        System.getenv("RESPONSE_HEADER_VALUE_MAX_CHARS") != null
+            ? System.getenv("RESPONSE_HEADER_VALUE_MAX_CHARS")
+            : "1024");
+    this.maxHeaderValues = Integer.parseInt(System.getenv("RESPONSE_HEADER_MAX_VALUES") != null
+        ? System.getenv("RESPONSE_HEADER_MAX_VALUES")
+        : "10");
+    this.batchMaxSize = Integer.parseInt(System.getenv("DELIVERY_BATCH_MAX_SIZE") != null
+        ? System.getenv("DELIVERY_BATCH_MAX_SIZE")
+        : "100");
+    this.batchMaxBytes = Integer.parseInt(System.getenv("DELIVERY_BATCH_MAX_BYTES") != null
+        ? System.getenv("DELIVERY_BATCH_MAX_BYTES")
+        : "1048576");
+    this.maxDeferralMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(
+        System.getenv("DELIVERY_MAX_DEFERRAL_SECONDS") != null
+            ? System.getenv("DELIVERY_MAX_DEFERRAL_SECONDS")
+            : "86400"));
+    // A send can wait for a host slot and then for the response, each up to 30s
+    this.minRemainingMillis = Long.parseLong(System.getenv("DELIVERY_MIN_REMAINING_MS") != null
+        ? System.getenv("DELIVERY_MIN_REMAINING_MS")
+        : "65000");
+
+    this.circuitBreaker = new EndpointCircuitBreaker(
+        "true".equalsIgnoreCase(System.getenv("CIRCUIT_BREAKER_SHARED"))
+            ? endpointStore
+            : null);
+    this.rateLimiter = new EndpointRateLimiter();
+
+    Core.getGlobalContext().register(this);
+  }
+
+  /**
+   * Runs the delivery path against dummy data before a SnapStart checkpoint. Registered after the
+   * services it was built with, so it runs before their hooks; the pool opened by the delivered
+   * lookup is closed again by WebhookDataSource. Priming failures don't stop the checkpoint.
+   */
+  @Override
+  public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+    long primingStart = metrics.startTimer();
+    try {
+      WebhookDeliveryMessage message =
+          new WebhookDeliveryMessage(0L, 0L, "priming", "{\"priming\":true}", 1);
+      message.setPayloadHash(WebhookPayloadStore.hash(message.getPayload()));
+      objectMapper.readValue(objectMapper.writeValueAsString(message),
+          WebhookDeliveryMessage.class);
+      objectMapper.writeValueAsString(
+          HeaderUtils.capHeaders(Map.of("content-type", List.of("application/json")), maxHeaders,
+              maxHeaderValues, maxHeaderValueChars));
+      rejectedDeliveryIds(new WebhookResponseBody("{\"failed\":[0]}", 14L, false));
+      retryPolicy.nextDelaySeconds(1, null);
+      httpService.prime();
+      dbService.findDeliveredIds(List.of(0L));
+    } catch (Exception e) {
+      log.warn("snapstart.priming").with("error", e.getMessage()).log("Priming failed");
+    }
+    metrics.recordLatency("Priming", primingStart);
   }
 
+  /**
+   * Reseeds the retry jitter, which would otherwise repeat across every container restored from
+   * the same snapshot, and starts the restore-to-first-delivery clock. Database and endpoint
+   * caches refresh themselves through their own hooks; AWS credentials are reloaded by the SDK
+   * providers.
+   */
   @Override
-  public String handleRequest(SQSEvent event, Context context) {
-    for (SQSEvent.SQSMessage message : event.getRecords()) {
+  public void afterRestore(org.crac.Context<? extends Resource> context) {
+    RetryPolicy.reseed();
+    metrics.increment("Restores");
+    restoredAtNanos.set(System.nanoTime());
+  }
+
+  private void recordFirstDeliveryAfterRestore() {
+    long restoredAt = restoredAtNanos.getAndSet(0);
+    if (restoredAt != 0) {
+      metrics.recordLatency("RestoreToFirstDelivery", restoredAt);
+      log.info("snapstart.restore")
+          .with("millis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - restoredAt))
+          .log("First delivery after restore");
+    }
+  }
+
+  @Override
+  public SQSBatchResponse handleRequest(SQSEvent event, Context context) {
+    long invocationStart = metrics.startTimer();
+    List<SQSEvent.SQSMessage> records = event.getRecords();
+    metrics.add("Messages", records.size());
+    List<Future<?>> results = new ArrayList<>(Collections.nCopies(records.size(), null));
+    Semaphore permits = new Semaphore(deliveryConcurrency);
+    DeliveryBatchAccumulator<BatchedDelivery> accumulator = new DeliveryBatchAccumulator<>();
+
+    long stageStart = metrics.startTimer();
+    List<WebhookDeliveryMessage> parsed = parseMessages(records);
+    metrics.recordLatency("ParseMessages", stageStart);
+    stageStart = metrics.startTimer();
+    Set<Long> delivered = findDeliveredIds(parsed);
+    metrics.recordLatency("DeliveredLookup", stageStart);
+    stageStart = metrics.startTimer();
+    resolvePayloads(parsed, delivered);
+    metrics.recordLatency("PayloadLookup", stageStart);
+
+    // Records left without a result weren't started before the invocation ran short of time
+    try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      boolean started = true;
+      for (int i = 0; i < records.size() && started; i++) {
+        SQSEvent.SQSMessage message = records.get(i);
+        WebhookDeliveryMessage deliveryMessage = parsed.get(i);
+        // Duplicate queue entries (publisher retries, SQS at-least-once) are dropped
+        if (deliveryMessage != null && delivered.contains(deliveryMessage.getDeliveryId())) {
+          log.info("delivery.duplicate").with("deliveryId", deliveryMessage.getDeliveryId())
+              .log("Skipping already delivered delivery");
+          metrics.increment("DuplicatesSkipped");
+          results.set(i, CompletableFuture.completedFuture(null));
+          continue;
+        }
+
+        BatchedDelivery batched = toBatchedDelivery(i, deliveryMessage);
+        if (batched == null) {
+          if (!acquireStart(permits, context)) {
+            break;
+          }
+          results.set(i, executor.submit(() -> {
+            try {
+              processWebhookMessage(message, deliveryMessage);
+              return null;
+            } finally {
+              permits.release();
+            }
+          }));
+          continue;
+        }
+
+        WebhookEndpoint endpoint = batched.endpoint();
+        for (List<BatchedDelivery> batch : accumulator.add(endpoint.getId(), batched,
+            batched.bytes(), batchMaxSize(endpoint), batchMaxBytes(endpoint))) {
+          started = started && submitBatch(batch, executor, permits, results, context);
+        }
+      }
+      for (List<BatchedDelivery> batch : accumulator.drainAll()) {
+        started = started && submitBatch(batch, executor, permits, results, context);
+      }
+    }
+
+    // Audit rows are write-behind; they must be on disk before the container can be frozen.
+    // Delivery state is already committed, so the records are acknowledged either way
+    stageStart = metrics.startTimer();
+    flushAuditLogs();
+    metrics.recordLatency("AuditFlush", stageStart);
+
+    List<SQSBatchResponse.BatchItemFailure> failures = new ArrayList<>();
+    int notStarted = 0;
+    for (int i = 0; i < records.size(); i++) {
+      if (results.get(i) == null) {
+        // SQS makes it visible again once the visibility timeout has passed
+        notStarted++;
+        failures.add(new SQSBatchResponse.BatchItemFailure(records.get(i).getMessageId()));
+        continue;
+      }
       try {
-        processWebhookMessage(message, context);
+        results.get(i).get();
+      } catch (ExecutionException e) {
+        log.warn("delivery.failure").with("messageId", records.get(i).getMessageId())
+            .with("error", e.getCause().getMessage()).log("Error processing message");
+        failures.add(new SQSBatchResponse.BatchItemFailure(records.get(i).getMessageId()));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        failures.add(new SQSBatchResponse.BatchItemFailure(records.get(i).getMessageId()));
+      }
+    }
+
+    // The service counts for the container's lifetime; this invocation's share is the difference
+    long httpRequests = httpService.getRequestCount();
+    long tlsHandshakes = httpService.getTlsHandshakeCount();
+    long reusedConnections = httpService.getConnectionReuseCount();
+    log.info("delivery.invocation").with("messages", records.size())
+        .with("failed", failures.size()).with("notStarted", notStarted)
+        .with("httpRequests", httpRequests - lastHttpRequests)
+        .with("tlsHandshakes", tlsHandshakes - lastTlsHandshakes)
+        .with("reusedConnections", reusedConnections - lastReusedConnections)
+        .log("Processed messages");
+    lastHttpRequests = httpRequests;
+    lastTlsHandshakes = tlsHandshakes;
+    lastReusedConnections = reusedConnections;
+
+    metrics.add("BatchItemFailures", failures.size());
+    metrics.add("NotStarted", notStarted);
+    metrics.recordLatency("Invocation", invocationStart);
+    String metricsLine = metrics.flush(context.getFunctionName());
+    if (metricsLine != null) {
+      context.getLogger().log(metricsLine);
+    }
+    return new SQSBatchResponse(failures);
+  }
+
+  /**
+   * Flushes the audit log writer. Rows it couldn't write stay buffered for the next flush; rows
+   * the database rejected were dropped and are only counted.
+   */
+  private void flushAuditLogs() {
+    try {
+      auditLogWriter.flush();
+    } catch (SQLException e) {
+      int unflushed = auditLogWriter.size();
+      metrics.increment("AuditFlushErrors");
+      metrics.add("AuditRowsUnflushed", unflushed);
+      log.error("delivery.audit").with("buffered", unflushed)
+          .with("error", e.getMessage()).log("Error flushing audit logs");
+    }
+    long dropped = auditLogWriter.getDroppedCount();
+    metrics.add("AuditRowsDropped", dropped - lastDroppedAuditRows);
+    lastDroppedAuditRows = dropped;
+  }
+
+  /** Parsed record bodies, {@code null} where a body can't be parsed. */
+  private List<WebhookDeliveryMessage> parseMessages(List<SQSEvent.SQSMessage> records) {
+    List<WebhookDeliveryMessage> parsed = new ArrayList<>(records.size());
+    for (SQSEvent.SQSMessage record : records) {
+      try {
+        parsed.add(objectMapper.readValue(record.getBody(), WebhookDeliveryMessage.class));
       } catch (Exception e) {
-        context.getLogger().log("Error processing message: " + e.getMessage());
+        parsed.add(null);
       }
     }
-    return "Processed " + event.getRecords().size() + " messages";
+    return parsed;
   }
 
-  private void processWebhookMessage(SQSEvent.SQSMessage sqsMessage, Context context)
-      throws Exception {
-    WebhookDeliveryMessage message =
-        objectMapper.readValue(sqsMessage.getBody(), WebhookDeliveryMessage.class);
+  /** Deliveries of this invocation that already succeeded, looked up in one query. */
+  private Set<Long> findDeliveredIds(List<WebhookDeliveryMessage> messages) {
+    List<Long> deliveryIds = new ArrayList<>(messages.size());
+    for (WebhookDeliveryMessage message : messages) {
+      if (message != null && message.getDeliveryId() != null) {
+        deliveryIds.add(message.getDeliveryId());
+      }
+    }
     try {
-      WebhookEndpoint endpoint = webhookDynamoDbService.findEndpointById(message.getWebhookEndpointId());
-      context.getLogger().log("WebhookEndpoint::" + endpoint);
-      context.getLogger().log("WebhookDeliveryMessage::" + message);
-      if (endpoint == null || !endpoint.getIsActive()) {
-        context.getLogger()
-            .log("Endpoint not found or inactive: " + message.getWebhookEndpointId());
-
-        dbService.updateDelivery(message.getDeliveryId(), null, "Endpoint not found or inactive",
-            "FAILED", null, message.getAttemptCount(), null, message.getPayload(), null);
-        return;
+      return dbService.findDeliveredIds(deliveryIds);
+    } catch (SQLException e) {
+      // Not being able to check only costs a possible duplicate delivery
+      log.warn("delivery.failure").with("error", e.getMessage())
+          .log("Error looking up delivered deliveries");
+      return Set.of();
+    }
+  }
+
+  /**
+   * Fills in the payloads of claim-check messages (sent without their payload, see
+   * {@link WebhookDeliveryMessage#forQueue}) from the payload store, missing ones in one query.
+   * Whatever can't be resolved here is looked up again when the message is delivered.
+   */
+  private void resolvePayloads(List<WebhookDeliveryMessage> messages, Set<Long> delivered) {
+    Set<String> hashes = new HashSet<>();
+    for (WebhookDeliveryMessage message : messages) {
+      if (message != null && message.getPayload() == null && message.getPayloadHash() != null
+          && !delivered.contains(message.getDeliveryId())) {
+        hashes.add(message.getPayloadHash());
       }
+    }
+    if (hashes.isEmpty()) {
+      return;
+    }
+    metrics.add("ClaimChecks", hashes.size());
 
-      HttpResponse<String> response = httpService.sendWebhook(endpoint, message);
+    Map<String, String> payloads;
+    try {
+      payloads = payloadStore.getAll(hashes);
+    } catch (SQLException e) {
+      log.warn("delivery.failure").with("payloads", hashes.size())
+          .with("error", e.getMessage()).log("Error looking up claim-check payloads");
+      return;
+    }
+    for (WebhookDeliveryMessage message : messages) {
+      if (message != null && message.getPayload() == null && message.getPayloadHash() != null) {
+        message.setPayload(payloads.get(message.getPayloadHash()));
+      }
+    }
+  }
 
-      int responseStatus = response.statusCode();
-      String responseBody = response.body();
-      String requestHeaders = objectMapper.writeValueAsString(response.request().headers().map());
-      String responseHeaders = objectMapper.writeValueAsString(response.headers().map());
+  /**
+   * The message as a member of a batch if its endpoint receives batched deliveries, otherwise
+   * {@code null} (also when it couldn't be parsed or resolved; the single path handles that).
+   */
+  private BatchedDelivery toBatchedDelivery(int index, WebhookDeliveryMessage message) {
+    if (message == null) {
+      return null;
+    }
+    try {
+      WebhookEndpoint endpoint =
+          endpointStore.findEndpointById(message.getWebhookEndpointId());
+      if (endpoint == null || !Boolean.TRUE.equals(endpoint.getIsActive())
+          || !Boolean.TRUE.equals(endpoint.getBatchDelivery())) {
+        return null;
+      }
+      // Payload plus the envelope written around it
+      int bytes = message.getPayload().getBytes(StandardCharsets.UTF_8).length + 96;
+      return new BatchedDelivery(index, message, endpoint, bytes);
+    } catch (Exception e) {
+      return null;
+    }
+  }
 
-      boolean isSuccess = response.statusCode() >= 200 && response.statusCode() < 300;
-      String status = isSuccess ? "DELIVERED" : "FAILED";
+  private int batchMaxSize(WebhookEndpoint endpoint) {
+    return endpoint.getBatchMaxSize() != null && endpoint.getBatchMaxSize() > 0
+        ? endpoint.getBatchMaxSize()
+        : batchMaxSize;
+  }
 
-      Timestamp nextRetryAt = ("FAILED".equals(status))
-          ? Timestamp.from(Instant.now().plusSeconds(60L * message.getAttemptCount()))
-          : null;
+  private int batchMaxBytes(WebhookEndpoint endpoint) {
+    return endpoint.getBatchMaxBytes() != null && endpoint.getBatchMaxBytes() > 0
+        ? endpoint.getBatchMaxBytes()
+        : batchMaxBytes;
+  }
 
-      dbService.updateDelivery(message.getDeliveryId(), responseStatus, responseBody, status,
-          nextRetryAt, message.getAttemptCount(), requestHeaders, message.getPayload(),
-          responseHeaders);
+  /**
+   * Waits for a free delivery slot, then takes it unless the invocation has less than
+   * DELIVERY_MIN_REMAINING_MS left, which isn't enough for a send to finish.
+   */
+  private boolean acquireStart(Semaphore permits, Context context) {
+    permits.acquireUninterruptibly();
+    if (context.getRemainingTimeInMillis() < minRemainingMillis) {
+      permits.release();
+      return false;
+    }
+    return true;
+  }
 
-      if (isSuccess) {
-        context.getLogger().log("Webhook delivered successfully: " + message.getDeliveryId());
-      } else {
-        context.getLogger().log("Webhook delivery failed with status " + response.statusCode()
-            + ": " + message.getDeliveryId());
-        scheduleRetry(message, context);
+  /** Starts delivering {@code batch}; {@code false} if it wasn't started, see acquireStart. */
+  private boolean submitBatch(List<BatchedDelivery> batch, ExecutorService executor,
+      Semaphore permits, List<Future<?>> results, Context context) {
+    if (!acquireStart(permits, context)) {
+      return false;
+    }
+    List<CompletableFuture<Void>> outcomes = new ArrayList<>(batch.size());
+    for (BatchedDelivery delivery : batch) {
+      CompletableFuture<Void> outcome = new CompletableFuture<>();
+      outcomes.add(outcome);
+      results.set(delivery.index(), outcome);
+    }
+    executor.submit(() -> {
+      try {
+        // Only the deliveries whose outcome couldn't be recorded are redelivered by SQS
+        Map<Integer, Exception> unrecorded = deliverBatch(batch);
+        for (int i = 0; i < batch.size(); i++) {
+          Exception error = unrecorded.get(batch.get(i).index());
+          if (error == null) {
+            outcomes.get(i).complete(null);
+          } else {
+            outcomes.get(i).completeExceptionally(error);
+          }
+        }
+      } catch (Throwable e) {
+        for (CompletableFuture<Void> outcome : outcomes) {
+          outcome.completeExceptionally(e);
+        }
+      } finally {
+        recordFirstDeliveryAfterRestore();
+        permits.release();
       }
+    });
+    return true;
+  }
 
-      return;
+  /**
+   * Sends a batch of deliveries for one endpoint in a single request and records the outcome of
+   * every delivery separately. A 2xx response marks all of them delivered unless the receiver
+   * lists some as {@code {"failed": [deliveryId, ...]}}; those, and every delivery of a failed
+   * request, are retried individually.
+   *
+   * @return the errors of deliveries whose outcome couldn't be recorded, by record index
+   */
+  private Map<Integer, Exception> deliverBatch(List<BatchedDelivery> batch) throws Exception {
+    WebhookEndpoint endpoint = batch.get(0).endpoint();
+    List<WebhookDeliveryMessage> messages = new ArrayList<>(batch.size());
+    for (BatchedDelivery delivery : batch) {
+      messages.add(delivery.message());
+    }
+    metrics.recordValue("BatchSize", messages.size());
+
+    long throttledMillis = rateLimiter.acquire(endpoint);
+    if (throttledMillis > 0) {
+      return forEachDelivery(batch,
+          message -> deferDelivery(message, throttledMillis, "Rate limited"));
+    }
+    EndpointCircuitBreaker.Permit permit = circuitBreaker.acquire(endpoint.getId());
+    if (!permit.allowed()) {
+      rateLimiter.refund(endpoint);
+      return forEachDelivery(batch,
+          message -> deferDelivery(message, permit.retryAfterMillis(), "Circuit open"));
+    }
 
+    HttpResponse<WebhookResponseBody> response;
+    long startedAt = System.nanoTime();
+    try {
+      response = httpService.sendWebhookBatch(endpoint, messages);
+      metrics.recordLatency("HttpSend", startedAt);
+      countAttempts(messages);
+    } catch (HostBusyException e) {
+      releaseUnsent(endpoint, permit);
+      return forEachDelivery(batch,
+          message -> deferDelivery(message, HOST_BUSY_DEFER_MILLIS, "Host busy"));
     } catch (Exception e) {
-      context.getLogger().log("Error delivering webhook: " + e.getMessage());
+      metrics.recordLatency("HttpSend", startedAt);
+      countAttempts(messages);
+      metrics.increment("NetworkErrors");
+      circuitBreaker.onResult(endpoint.getId(), permit, false);
+      rateLimiter.onError(endpoint, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+      log.warn("delivery.failure").with("endpointId", endpoint.getId())
+          .with("batchSize", messages.size()).with("error", e.getMessage())
+          .log("Error delivering webhook batch");
+
+      return forEachDelivery(batch, message -> {
+        Integer retryDelaySeconds = retryDelaySeconds(endpoint, message, -1);
+        recordAttempt(message, null, new WebhookResponseBody(e.getMessage(), null, false),
+            "FAILED", nextRetryAt(retryDelaySeconds), null, null);
+        scheduleRetry(message, retryDelaySeconds);
+      });
+    }
 
+    String retryAfter = response.headers().firstValue("Retry-After").orElse(null);
+    metrics.recordStatus(response.statusCode());
+    circuitBreaker.onResult(endpoint.getId(), permit, !isEndpointFailure(response.statusCode()));
+    rateLimiter.onResponse(endpoint, response.statusCode(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), retryAfter);
+
+    String requestHeaders = objectMapper.writeValueAsString(HeaderUtils.capHeaders(
+        response.request().headers().map(), maxHeaders, maxHeaderValues, maxHeaderValueChars));
+    String responseHeaders = objectMapper.writeValueAsString(HeaderUtils.capHeaders(
+        response.headers().map(), maxHeaders, maxHeaderValues, maxHeaderValueChars));
+    boolean isSuccess = response.statusCode() >= 200 && response.statusCode() < 300;
+    Set<Long> rejected = isSuccess ? rejectedDeliveryIds(response.body()) : Set.of();
+
+    Map<Integer, Exception> unrecorded = forEachDelivery(batch, message -> {
+      boolean deliveryOk = isSuccess && !rejected.contains(message.getDeliveryId());
+      Integer retryDelaySeconds = deliveryOk ? null
+          : retryDelaySeconds(endpoint, message, EndpointRateLimiter.parseRetryAfter(retryAfter));
+
+      recordAttempt(message, response.statusCode(), response.body(),
+          deliveryOk ? "DELIVERED" : "FAILED", nextRetryAt(retryDelaySeconds), requestHeaders,
+          responseHeaders);
+      if (!deliveryOk) {
+        scheduleRetry(message, retryDelaySeconds);
+      }
+    });
+
+    int delivered = 0;
+    for (WebhookDeliveryMessage message : messages) {
+      if (isSuccess && !rejected.contains(message.getDeliveryId())) {
+        delivered++;
+      }
+    }
+    (delivered == messages.size() ? log.info("delivery.success") : log.warn("delivery.failure"))
+        .with("endpointId", endpoint.getId()).with("status", response.statusCode())
+        .with("delivered", delivered).with("batchSize", messages.size())
+        .log("Webhook batch delivered");
+    return unrecorded;
+  }
+
+  /**
+   * Runs {@code step} for each delivery of {@code batch}, carrying on past the ones it fails for.
+   *
+   * @return the errors, by record index
+   */
+  private Map<Integer, Exception> forEachDelivery(List<BatchedDelivery> batch,
+      DeliveryStep step) {
+    Map<Integer, Exception> errors = new HashMap<>();
+    for (BatchedDelivery delivery : batch) {
       try {
-        dbService.updateDelivery(message.getDeliveryId(), null, e.getMessage(), "FAILED",
-            Timestamp.from(Instant.now().plusSeconds(60L * message.getAttemptCount())),
-            message.getAttemptCount(), null, message.getPayload(), null);
+        step.apply(delivery.message());
+      } catch (Exception e) {
+        log.error("delivery.audit").with("deliveryId", delivery.message().getDeliveryId())
+            .with("error", e.getMessage()).log("Error recording batched delivery");
+        errors.put(delivery.index(), e);
+      }
+    }
+    return errors;
+  }
+
+  private void countAttempts(List<WebhookDeliveryMessage> messages) {
+    for (WebhookDeliveryMessage message : messages) {
+      metrics.increment("Attempt" + message.getAttemptCount());
+    }
+  }
+
+  /** Hands back the rate token and circuit permit of a request that was never sent. */
+  private void releaseUnsent(WebhookEndpoint endpoint, EndpointCircuitBreaker.Permit permit) {
+    metrics.increment("HostBusy");
+    rateLimiter.refund(endpoint);
+    circuitBreaker.release(endpoint.getId(), permit);
+  }
 
-        scheduleRetry(message, context);
-      } catch (Exception dbEx) {
-        context.getLogger().log("Error writing audit log: " + dbEx.getMessage());
+  /** Delivery ids listed under "failed" in a 2xx batch response, empty if there are none. */
+  private Set<Long> rejectedDeliveryIds(WebhookResponseBody body) {
+    if (body == null || body.getBody() == null || body.isTruncated()
+        || !JsonTextUtils.isJsonStructure(body.getBody())) {
+      return Set.of();
+    }
+    try {
+      JsonNode failed = objectMapper.readTree(body.getBody()).path("failed");
+      Set<Long> ids = new HashSet<>();
+      for (JsonNode id : failed) {
+        if (id.canConvertToLong()) {
+          ids.add(id.asLong());
+        }
       }
+      return ids;
+    } catch (Exception e) {
+      return Set.of();
+    }
+  }
 
-      return;
+  private void processWebhookMessage(SQSEvent.SQSMessage sqsMessage,
+      WebhookDeliveryMessage message) throws Exception {
+    long messageStart = metrics.startTimer();
+    try {
+      deliverMessage(sqsMessage, message);
+    } finally {
+      metrics.recordLatency("MessageTotal", messageStart);
+      recordFirstDeliveryAfterRestore();
     }
   }
 
-  private void scheduleRetry(WebhookDeliveryMessage message, Context context) throws Exception {
-    if (message.getAttemptCount() >= maxAttempts) {
-      dbService.updateDelivery(message.getDeliveryId(), null, null, "ABANDONED", null,
-          message.getAttemptCount(), null, null, null);
+  private void deliverMessage(SQSEvent.SQSMessage sqsMessage, WebhookDeliveryMessage message)
+      throws Exception {
+    if (message == null) {
+      // Parsed again so the parse error is reported for this record
+      message = objectMapper.readValue(sqsMessage.getBody(), WebhookDeliveryMessage.class);
+    }
+    if (message.getPayload() == null && message.getPayloadHash() != null) {
+      // A claim check that the invocation's bulk lookup couldn't resolve; SQS redelivers it
+      // if the payload can't be read now either
+      String payload = payloadStore.get(message.getPayloadHash());
+      if (payload == null) {
+        throw new IllegalStateException("No payload stored under " + message.getPayloadHash());
+      }
+      message.setPayload(payload);
+    }
+    WebhookEndpoint endpoint;
+    try {
+      long lookupStart = metrics.startTimer();
+      endpoint = endpointStore.findEndpointById(message.getWebhookEndpointId());
+      metrics.recordLatency("EndpointLookup", lookupStart);
+    } catch (Exception e) {
+      recordFailure(message, null, e);
+      return;
+    }
+    log.debug("delivery.attempt").with("deliveryId", message.getDeliveryId())
+        .with("endpointId", message.getWebhookEndpointId())
+        .with("eventType", message.getEventType()).with("attempt", message.getAttemptCount())
+        .log("Delivering webhook");
+    if (endpoint == null || !endpoint.getIsActive()) {
+      log.warn("delivery.failure").with("deliveryId", message.getDeliveryId())
+          .with("endpointId", message.getWebhookEndpointId())
+          .log("Endpoint not found or inactive");
+
+      recordAttempt(message, null,
+          new WebhookResponseBody("Endpoint not found or inactive", null, false), "FAILED", null,
+          null, null);
+      return;
+    }
 
-      context.getLogger()
-          .log("Max attempts reached, abandoning delivery: " + message.getDeliveryId());
+    // Over the endpoint's rate: defer without spending an attempt
+    long throttledMillis = rateLimiter.acquire(endpoint);
+    if (throttledMillis > 0) {
+      deferDelivery(message, throttledMillis, "Rate limited");
       return;
     }
 
-    int delaySeconds = RetryUtils.getRetryDelaySeconds(message.getAttemptCount());
-    Timestamp nextRetryAt = RetryUtils.calculateNextRetryTime(message.getAttemptCount());
+    // Endpoint known to be down: put the delivery back without spending an attempt on it, nor
+    // the token (checked after the rate so a half-open probe isn't taken and then deferred)
+    EndpointCircuitBreaker.Permit permit = circuitBreaker.acquire(endpoint.getId());
+    if (!permit.allowed()) {
+      rateLimiter.refund(endpoint);
+      deferDelivery(message, permit.retryAfterMillis(), "Circuit open");
+      return;
+    }
 
-    dbService.updateDelivery(message.getDeliveryId(), null, null, "PENDING", nextRetryAt,
-        message.getAttemptCount(), null, null, null);
+    HttpResponse<WebhookResponseBody> response;
+    long startedAt = System.nanoTime();
+    try {
+      response = httpService.sendWebhook(endpoint, message);
+      metrics.recordLatency("HttpSend", startedAt);
+      metrics.increment("Attempt" + message.getAttemptCount());
+    } catch (HostBusyException e) {
+      // Never sent: not the receiver's failure, nor an attempt
+      releaseUnsent(endpoint, permit);
+      deferDelivery(message, HOST_BUSY_DEFER_MILLIS, "Host busy");
+      return;
+    } catch (Exception e) {
+      metrics.recordLatency("HttpSend", startedAt);
+      metrics.increment("Attempt" + message.getAttemptCount());
+      metrics.increment("NetworkErrors");
+      circuitBreaker.onResult(endpoint.getId(), permit, false);
+      rateLimiter.onError(endpoint, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+      recordFailure(message, endpoint, e);
+      return;
+    }
 
-    WebhookDeliveryMessage retryMessage =
-        new WebhookDeliveryMessage(message.getDeliveryId(), message.getWebhookEndpointId(),
-            message.getEventType(), message.getPayload(), message.getAttemptCount() + 1);
+    // From here on the response is what gets recorded; an error writing it fails the record and
+    // SQS redelivers it (skipped as a duplicate if DELIVERED was written)
+    String retryAfter = response.headers().firstValue("Retry-After").orElse(null);
+    metrics.recordStatus(response.statusCode());
+    circuitBreaker.onResult(endpoint.getId(), permit, !isEndpointFailure(response.statusCode()));
+    rateLimiter.onResponse(endpoint, response.statusCode(),
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt), retryAfter);
+
+    int responseStatus = response.statusCode();
+    WebhookResponseBody responseBody = response.body();
+    String requestHeaders = objectMapper.writeValueAsString(HeaderUtils.capHeaders(
+        response.request().headers().map(), maxHeaders, maxHeaderValues, maxHeaderValueChars));
+    String responseHeaders = objectMapper.writeValueAsString(HeaderUtils.capHeaders(
+        response.headers().map(), maxHeaders, maxHeaderValues, maxHeaderValueChars));
+
+    boolean isSuccess = response.statusCode() >= 200 && response.statusCode() < 300;
+    String status = isSuccess ? "DELIVERED" : "FAILED";
+
+    Integer retryDelaySeconds = isSuccess ? null
+        : retryDelaySeconds(endpoint, message, EndpointRateLimiter.parseRetryAfter(retryAfter));
+
+    recordAttempt(message, responseStatus, responseBody, status, nextRetryAt(retryDelaySeconds),
+        requestHeaders, responseHeaders);
+
+    if (isSuccess) {
+      log.info("delivery.success").with("deliveryId", message.getDeliveryId())
+          .with("status", responseStatus).log("Webhook delivered");
+    } else {
+      log.warn("delivery.failure").with("deliveryId", message.getDeliveryId())
+          .with("endpointId", endpoint.getId()).with("status", responseStatus)
+          .log("Webhook delivery failed");
+      scheduleRetry(message, retryDelaySeconds);
+    }
+  }
 
-    String payload = objectMapper.writeValueAsString(retryMessage);
+  /**
+   * Records an attempt that got no response (the endpoint lookup or the request itself failed)
+   * and schedules the next one. If that can't be written the error is rethrown so SQS
+   * redelivers the message.
+   */
+  private void recordFailure(WebhookDeliveryMessage message, WebhookEndpoint endpoint,
+      Exception error) throws Exception {
+    log.warn("delivery.failure").with("deliveryId", message.getDeliveryId())
+        .with("endpointId", message.getWebhookEndpointId()).with("error", error.getMessage())
+        .log("Error delivering webhook");
 
-    if (delaySeconds <= 900) {
-      // ✅ Simple SQS delay (works for <= 15 min)
-      SendMessageRequest retryRequest = new SendMessageRequest().withQueueUrl(queueUrl)
-          .withMessageBody(payload).withDelaySeconds(delaySeconds);
+    try {
+      Integer retryDelaySeconds = retryDelaySeconds(endpoint, message, -1);
+      recordAttempt(message, null, new WebhookResponseBody(error.getMessage(), null, false),
+          "FAILED", nextRetryAt(retryDelaySeconds), null, null);
+
+      scheduleRetry(message, retryDelaySeconds);
+    } catch (Exception dbEx) {
+      log.error("delivery.audit").with("deliveryId", message.getDeliveryId())
+          .with("error", dbEx.getMessage()).log("Error writing audit log");
+      throw dbEx;
+    }
+  }
 
-      sqs.sendMessage(retryRequest);
+  private void recordAttempt(WebhookDeliveryMessage message, Integer responseStatus,
+      WebhookResponseBody response, String status, Timestamp nextRetryAt, String requestHeaders,
+      String responseHeaders) throws SQLException {
+    long updateStart = metrics.startTimer();
+    dbService.updateDeliveryState(message.getDeliveryId(), responseStatus, response, status,
+        nextRetryAt, message.getAttemptCount());
+    metrics.recordLatency("UpdateDelivery", updateStart);
+
+    // The payload is stored once in webhook_payloads; only older messages carry no hash
+    WebhookDeliveryAuditLog log = new WebhookDeliveryAuditLog(message.getDeliveryId(),
+        message.getAttemptCount(), requestHeaders,
+        message.getPayloadHash() == null ? message.getPayload() : null, responseStatus,
+        responseHeaders, response, status);
+    log.setPayloadHash(message.getPayloadHash());
+    auditLogWriter.append(log);
+  }
 
-      context.getLogger().log("Scheduled retry " + retryMessage.getAttemptCount() + " for delivery "
-          + message.getDeliveryId() + " in " + delaySeconds + " seconds via SQS");
-    } else {
-      // ✅ Use EventBridge Scheduler for > 15 min
-      SchedulerClient scheduler = SchedulerClient.create();
+  private void recordStatus(WebhookDeliveryMessage message, String status, Timestamp nextRetryAt)
+      throws SQLException {
+    long updateStart = metrics.startTimer();
+    dbService.updateDeliveryStatus(message.getDeliveryId(), status, nextRetryAt,
+        message.getAttemptCount());
+    metrics.recordLatency("UpdateDelivery", updateStart);
+    auditLogWriter.append(new WebhookDeliveryAuditLog(message.getDeliveryId(),
+        message.getAttemptCount(), null, null, null, null, null, status));
+  }
 
-      ZoneId localZone = ZoneId.systemDefault();
-      ZonedDateTime localTime = ZonedDateTime.now(localZone).plusMinutes(2);
+  private record BatchedDelivery(int index, WebhookDeliveryMessage message,
+      WebhookEndpoint endpoint, int bytes) {
+  }
 
-      // Convert to UTC before formatting
-      ZonedDateTime utcTime = localTime.withZoneSameInstant(ZoneOffset.UTC);
+  /** Per-delivery bookkeeping of a batch, see {@link #forEachDelivery}. */
+  private interface DeliveryStep {
+    void apply(WebhookDeliveryMessage message) throws Exception;
+  }
 
-      DateTimeFormatter formatter =
-          DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss").withZone(ZoneOffset.UTC);
+  /** 5xx, 408 and 429 mean the receiver can't take traffic; other 4xx are per-request. */
+  private static boolean isEndpointFailure(int statusCode) {
+    return statusCode >= 500 || statusCode == 408 || statusCode == 429;
+  }
 
-      String scheduleExpression = "at(" + formatter.format(utcTime) + ")";
+  /**
+   * Re-enqueues a delivery that was not attempted, keeping its attempt count, so it comes back
+   * once the endpoint's circuit may have closed or its rate allows it. Only the first deferral of
+   * an attempt is written to webhook_deliveries and the audit log, and each further one doubles
+   * the delay (up to the queue's 900s), so an endpoint that stays down costs a few sends per
+   * delivery rather than a status update every cycle. A delivery that has been deferred for
+   * DELIVERY_MAX_DEFERRAL_SECONDS without being attempted is abandoned.
+   */
+  private void deferDelivery(WebhookDeliveryMessage message, long delayMillis, String reason)
+      throws Exception {
+    long now = System.currentTimeMillis();
+    boolean first = message.getDeferredSince() == null;
+    if (first) {
+      message.setDeferredSince(now);
+    } else if (now - message.getDeferredSince() >= maxDeferralMillis) {
+      recordStatus(message, "ABANDONED", null);
+      metrics.increment("Abandoned");
+      metrics.increment("DeferralsExpired");
+
+      log.warn("delivery.abandoned").with("deliveryId", message.getDeliveryId())
+          .with("endpointId", message.getWebhookEndpointId()).with("reason", reason)
+          .with("deferredSince", Instant.ofEpochMilli(message.getDeferredSince()))
+          .log("Deferred too long, abandoning delivery");
+      return;
+    }
 
-      String schedularNameFormat = System.getenv("SCHEDULE_ROLE_FORMAT");
-      String scheduleName = String.format(schedularNameFormat, message.getDeliveryId(),
-          retryMessage.getAttemptCount());
+    int deferrals = message.getDeferrals() != null ? message.getDeferrals() : 0;
+    message.setDeferrals(deferrals + 1);
+    long backoffSeconds = 1L << Math.min(deferrals, 10);
+    int delaySeconds =
+        (int) Math.min(900, Math.max(backoffSeconds, (delayMillis + 999) / 1000));
+    if (first) {
+      recordStatus(message, "PENDING",
+          Timestamp.from(Instant.now().plusSeconds(delaySeconds)));
+    }
 
-      CreateScheduleRequest scheduleRequest = CreateScheduleRequest.builder().name(scheduleName)
-          .scheduleExpression(scheduleExpression).groupName(System.getenv("SCHEDULE_ROLE_GROUP"))
-          .flexibleTimeWindow(FlexibleTimeWindow.builder().mode("OFF").build())
-          .target(Target.builder().arn(System.getenv("SQS_QUEUE_ARN"))
-              .roleArn(System.getenv("EVENTBRIDGE_ROLE_ARN")).input(payload).build())
-          .build();
+    long sendStart = metrics.startTimer();
+    deliveryQueue.send(message, delaySeconds);
+    metrics.recordLatency("QueueSend", sendStart);
+    metrics.increment("Deferred");
 
-      scheduler.createSchedule(scheduleRequest);
-      scheduler.close();
+    log.info("delivery.deferred").with("deliveryId", message.getDeliveryId())
+        .with("endpointId", message.getWebhookEndpointId()).with("reason", reason)
+        .with("deferrals", message.getDeferrals()).with("delaySeconds", delaySeconds)
+        .log("Deferred delivery");
+  }
 
-      context.getLogger()
-          .log("Scheduled retry " + retryMessage.getAttemptCount() + " for delivery "
-              + message.getDeliveryId() + " at " + formatter.format(utcTime)
-              + " via EventBridge Scheduler");
+  /**
+   * Backoff before the next attempt according to the endpoint's retry policy, or {@code null} if
+   * the delivery has used up its attempts.
+   *
+   * @param retryAfterMillis the receiver's Retry-After in milliseconds, used as a lower bound;
+   *        -1 if it sent none
+   */
+  private Integer retryDelaySeconds(WebhookEndpoint endpoint, WebhookDeliveryMessage message,
+      long retryAfterMillis) {
+    RetryPolicy policy = retryPolicy.resolve(endpoint, message.getEventType());
+    if (message.getAttemptCount() >= policy.getMaxAttempts()) {
+      return null;
     }
+    int delaySeconds =
+        policy.nextDelaySeconds(message.getAttemptCount(), message.getRetryDelaySeconds());
+    return (int) Math.max(delaySeconds, (retryAfterMillis + 999) / 1000);
+  }
+
+  private static Timestamp nextRetryAt(Integer retryDelaySeconds) {
+    return retryDelaySeconds != null ? Timestamp.from(Instant.now().plusSeconds(retryDelaySeconds))
+        : null;
+  }
+
+  /** Enqueues the next attempt after {@code delaySeconds}, or abandons the delivery if null. */
+  private void scheduleRetry(WebhookDeliveryMessage message, Integer delaySeconds)
+      throws Exception {
+    if (delaySeconds == null) {
+      recordStatus(message, "ABANDONED", null);
+      metrics.increment("Abandoned");
+
+      log.warn("delivery.abandoned").with("deliveryId", message.getDeliveryId())
+          .with("attempt", message.getAttemptCount())
+          .log("Max attempts reached, abandoning delivery");
+      return;
+    }
+
+    Timestamp nextRetryAt = nextRetryAt(delaySeconds);
+
+    // Long delays are picked up by RetrySweeperLambda once next_retry_at has passed
+    if (delaySeconds > 900) {
+      recordStatus(message, "SCHEDULED", nextRetryAt);
+      metrics.increment("RetriesScheduledForSweeper");
+
+      log.info("delivery.retry").with("deliveryId", message.getDeliveryId())
+          .with("attempt", message.getAttemptCount() + 1).with("nextRetryAt", nextRetryAt)
+          .log("Scheduled retry via sweeper");
+      return;
+    }
+
+    recordStatus(message, "PENDING", nextRetryAt);
+
+    WebhookDeliveryMessage retryMessage =
+        new WebhookDeliveryMessage(message.getDeliveryId(), message.getWebhookEndpointId(),
+            message.getEventType(), message.getPayload(), message.getAttemptCount() + 1);
+    retryMessage.setPayloadHash(message.getPayloadHash());
+    retryMessage.setRetryDelaySeconds(delaySeconds);
+
+    long sendStart = metrics.startTimer();
+    deliveryQueue.send(retryMessage, delaySeconds);
+    metrics.recordLatency("QueueSend", sendStart);
+    metrics.increment("RetriesQueued");
+
+    log.info("delivery.retry").with("deliveryId", message.getDeliveryId())
+        .with("attempt", retryMessage.getAttemptCount()).with("delaySeconds", delaySeconds)
+        .log("Scheduled retry via SQS");
   }
 
 }
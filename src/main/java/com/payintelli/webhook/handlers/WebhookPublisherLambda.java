@@ -1,12 +1,17 @@
 package com.payintelli.webhook.handlers;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.SQSBatchResponse;
 import com.amazonaws.services.lambda.runtime.events.SQSEvent;
-import com.amazonaws.services.sqs.AmazonSQS;
-import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
-import com.amazonaws.services.sqs.model.SendMessageRequest;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -14,84 +19,217 @@ import com.payintelli.webhook.models.WebhookDelivery;
 import com.payintelli.webhook.models.WebhookDeliveryMessage;
 import com.payintelli.webhook.models.WebhookEndpoint;
 import com.payintelli.webhook.models.WebhookPublisherMessage;
+import com.payintelli.webhook.services.DeliveryQueue;
+import com.payintelli.webhook.services.DeliveryRepository;
+import com.payintelli.webhook.services.EndpointStore;
+import com.payintelli.webhook.services.SqsDeliveryQueue;
 import com.payintelli.webhook.services.WebhookDatabaseService;
 import com.payintelli.webhook.services.WebhookDynamoDbService;
+import com.payintelli.webhook.services.WebhookPayloadStore;
+import com.payintelli.webhook.utils.InvocationMetrics;
+import com.payintelli.webhook.utils.StructuredLogger;
+import org.crac.Core;
+import org.crac.Resource;
+
+public class WebhookPublisherLambda
+    implements RequestHandler<SQSEvent, SQSBatchResponse>, Resource {
+  private static final StructuredLogger log =
+      StructuredLogger.getLogger(WebhookPublisherLambda.class);
+
+  private static final int RECENT_EVENTS_CAPACITY = 10000;
+  private static final String PRIMING_EVENT = "{\"id\":\"priming\",\"clientId\":\"priming\","
+      + "\"eventType\":\"priming.event\",\"createdAt\":\"2024-01-01T00:00:00Z\","
+      + "\"data\":{\"priming\":true}}";
 
-public class WebhookPublisherLambda implements RequestHandler<SQSEvent, String> {
-
-  private final AmazonSQS sqs = AmazonSQSClientBuilder.defaultClient();
   private final ObjectMapper readObjectMapper;
-  private final ObjectMapper writeObjectMapper = new ObjectMapper();
-  private final WebhookDatabaseService dbService;
-  private final String queueUrl;
-  private final WebhookDynamoDbService webhookDynamoDbService;
-
+  private final InvocationMetrics metrics = new InvocationMetrics("publisher");
+  private final DeliveryRepository dbService;
+  private final DeliveryQueue deliveryQueue;
+  private final EndpointStore endpointStore;
+  // Ids of events fully published by this container; redeliveries of them are dropped
+  private final Set<String> recentlyPublished = Collections.newSetFromMap(
+      new LinkedHashMap<String, Boolean>(RECENT_EVENTS_CAPACITY * 2, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+          return size() > RECENT_EVENTS_CAPACITY;
+        }
+      });
+  // Set when restored from a SnapStart snapshot, cleared by the first event afterwards
+  private final AtomicLong restoredAtNanos = new AtomicLong();
 
   public WebhookPublisherLambda() {
-    this.dbService = new WebhookDatabaseService(System.getenv("DATABASE_URL"),
-        System.getenv("DATABASE_USERNAME"), System.getenv("DATABASE_PASSWORD"));
-    this.queueUrl = System.getenv("SQS_QUEUE_URL");
-    this.webhookDynamoDbService = new WebhookDynamoDbService(System.getenv("DYNAMODB_TABLE_NAME"));
+    this(new WebhookDatabaseService(System.getenv("DATABASE_URL"),
+            System.getenv("DATABASE_USERNAME"), System.getenv("DATABASE_PASSWORD")),
+        new WebhookDynamoDbService(System.getenv("DYNAMODB_TABLE_NAME")),
+        new SqsDeliveryQueue(System.getenv("SQS_QUEUE_URL")));
+  }
 
+  public WebhookPublisherLambda(DeliveryRepository dbService, EndpointStore endpointStore,
+      DeliveryQueue deliveryQueue) {
+    this.dbService = dbService;
+    this.endpointStore = endpointStore;
+    this.deliveryQueue = deliveryQueue;
 
     readObjectMapper = new ObjectMapper();
     readObjectMapper.registerModule(new JavaTimeModule());
     readObjectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    Core.getGlobalContext().register(this);
+  }
+
+  /**
+   * Runs the ingestion path against a dummy event before a SnapStart checkpoint; the pool opened
+   * by the lookup is closed again by WebhookDataSource. Priming failures don't stop the
+   * checkpoint.
+   */
+  @Override
+  public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+    long primingStart = metrics.startTimer();
+    try {
+      WebhookPublisherMessage event =
+          readObjectMapper.readValue(PRIMING_EVENT, WebhookPublisherMessage.class);
+      WebhookPayloadStore.hash(event.getData());
+      dbService.findDeliveredIds(List.of(0L));
+    } catch (Exception e) {
+      log.warn("snapstart.priming").with("error", e.getMessage()).log("Priming failed");
+    }
+    metrics.recordLatency("Priming", primingStart);
+  }
+
+  @Override
+  public void afterRestore(org.crac.Context<? extends Resource> context) {
+    metrics.increment("Restores");
+    restoredAtNanos.set(System.nanoTime());
   }
 
   @Override
-  public String handleRequest(SQSEvent event, Context context) {
+  public SQSBatchResponse handleRequest(SQSEvent event, Context context) {
+    // Failed events go back to SQS; ingestion is idempotent, so a retry only adds what's missing
+    long invocationStart = metrics.startTimer();
+    List<SQSBatchResponse.BatchItemFailure> failures = new ArrayList<>();
     for (SQSEvent.SQSMessage message : event.getRecords()) {
+      long eventStart = metrics.startTimer();
       try {
-        processWebhookMessage(message, context);
+        processWebhookMessage(message);
       } catch (Exception e) {
-        context.getLogger().log("Error processing message: " + e.getMessage());
+        log.warn("publish.failure").with("messageId", message.getMessageId())
+            .with("error", e.getMessage()).log("Error processing message");
+        failures.add(new SQSBatchResponse.BatchItemFailure(message.getMessageId()));
       }
+      metrics.recordLatency("EventTotal", eventStart);
+
+      long restoredAt = restoredAtNanos.getAndSet(0);
+      if (restoredAt != 0) {
+        metrics.recordLatency("RestoreToFirstPublish", restoredAt);
+        log.info("snapstart.restore")
+            .with("millis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - restoredAt))
+            .log("First event after restore");
+      }
+    }
+    log.info("publish.invocation").with("messages", event.getRecords().size())
+        .with("failed", failures.size()).log("Processed messages");
+
+    metrics.add("Events", event.getRecords().size());
+    metrics.add("EventFailures", failures.size());
+    metrics.recordLatency("Invocation", invocationStart);
+    String metricsLine = metrics.flush(context.getFunctionName());
+    if (metricsLine != null) {
+      context.getLogger().log(metricsLine);
     }
-    return "Processed " + event.getRecords().size() + " messages";
+    return new SQSBatchResponse(failures);
   }
 
-  public String processWebhookMessage(SQSEvent.SQSMessage sqsMessage, Context context) {
+  public String processWebhookMessage(SQSEvent.SQSMessage sqsMessage) {
     try {
+      long stageStart = metrics.startTimer();
       WebhookPublisherMessage event =
           readObjectMapper.readValue(sqsMessage.getBody(), WebhookPublisherMessage.class);
-      context.getLogger().log("Processing webhook event: " + event);
+      metrics.recordLatency("ParseEvent", stageStart);
+      log.debug("publish.event").with("eventId", event.getId())
+          .with("clientId", event.getClientId()).with("eventType", event.getEventType())
+          .log("Processing webhook event");
+
+      if (event.getId() != null && recentlyPublished.contains(event.getId())) {
+        log.info("publish.duplicate").with("eventId", event.getId())
+            .log("Skipping already published event");
+        metrics.increment("DuplicateEvents");
+        return "Skipped duplicate event: " + event.getId();
+      }
 
-      List<WebhookEndpoint> endpoints = webhookDynamoDbService
+      stageStart = metrics.startTimer();
+      List<WebhookEndpoint> endpoints = endpointStore
           .findActiveEndpointsByEvent(event.getClientId(), event.getEventType());
-      context.getLogger()
-          .log("Found " + endpoints.size() + " endpoints for event: " + event.getEventType());
+      metrics.recordLatency("EndpointLookup", stageStart);
+      metrics.recordValue("FanOut", endpoints.size());
 
+      if (endpoints.isEmpty()) {
+        return "Published 0 webhook deliveries for event: " + event.getEventType();
+      }
+
+      String payload = event.getData();
+      String payloadHash = WebhookPayloadStore.hash(payload);
+      List<WebhookDelivery> deliveries = new ArrayList<>(endpoints.size());
       for (WebhookEndpoint endpoint : endpoints) {
         WebhookDelivery delivery = new WebhookDelivery();
+        delivery.setEventId(event.getId());
         delivery.setWebhookEndpointId(endpoint.getId());
         delivery.setEventType(event.getEventType());
-        delivery.setPayload(event.getData().toString());
+        delivery.setPayload(payload);
+        delivery.setPayloadHash(payloadHash);
         delivery.setAttemptCount(1);
         delivery.setStatus("PENDING");
+        deliveries.add(delivery);
+      }
 
-        Long deliveryId = dbService.createWebhookDelivery(delivery);
-
-        dbService.insertWebhookDeliveryLog(deliveryId, 1, delivery.getPayload());
-
-        WebhookDeliveryMessage message = new WebhookDeliveryMessage(deliveryId, endpoint.getId(),
-            event.getEventType(), event.getData().toString(), 1);
-        String messageBody = writeObjectMapper.writeValueAsString(message);
-
-        SendMessageRequest sendMessageRequest =
-            new SendMessageRequest().withQueueUrl(queueUrl).withMessageBody(messageBody);
+      stageStart = metrics.startTimer();
+      List<Long> deliveryIds = dbService.createWebhookDeliveries(deliveries);
+      metrics.recordLatency("CreateDeliveries", stageStart);
+
+      List<WebhookDeliveryMessage> messages = new ArrayList<>(deliveries.size());
+      for (WebhookDelivery delivery : deliveries) {
+        // Sent by an earlier, partially failed run of this event
+        if (delivery.getEnqueuedAt() != null) {
+          continue;
+        }
+        WebhookDeliveryMessage message = new WebhookDeliveryMessage(delivery.getId(),
+            delivery.getWebhookEndpointId(), event.getEventType(), payload, 1);
+        message.setPayloadHash(payloadHash);
+        messages.add(message);
+      }
 
-        sqs.sendMessage(sendMessageRequest);
+      List<Long> enqueued = List.of();
+      Map<Long, String> queueFailures = Map.of();
+      stageStart = metrics.startTimer();
+      try {
+        DeliveryQueue.SendResult sent = deliveryQueue.sendAll(messages);
+        enqueued = sent.enqueued();
+        queueFailures = sent.failures();
+      } finally {
+        metrics.recordLatency("Enqueue", stageStart);
+        stageStart = metrics.startTimer();
+        // Record what was sent even if some messages failed, so a retry doesn't resend them
+        dbService.markDeliveriesEnqueued(enqueued);
+        metrics.recordLatency("MarkEnqueued", stageStart);
+      }
+      metrics.add("DeliveriesEnqueued", enqueued.size());
+      if (enqueued.size() < messages.size()) {
+        throw new IllegalStateException("Failed to queue " + (messages.size() - enqueued.size())
+            + " of " + messages.size() + " deliveries: " + queueFailures);
+      }
 
-        context.getLogger()
-            .log("Queued delivery " + deliveryId + " for endpoint " + endpoint.getId());
+      if (event.getId() != null) {
+        recentlyPublished.add(event.getId());
       }
 
+      log.info("publish.success").with("eventId", event.getId())
+          .with("eventType", event.getEventType()).with("endpoints", endpoints.size())
+          .with("enqueued", enqueued.size()).with("deliveryIds", () -> deliveryIds)
+          .log("Queued deliveries");
+
       return "Published " + endpoints.size() + " webhook deliveries for event: "
           + event.getEventType();
 
     } catch (Exception e) {
-      context.getLogger().log("Error processing webhook event: " + e.getMessage());
       throw new RuntimeException(e);
     }
   }
@@ -0,0 +1,71 @@
+package com.payintelli.webhook.models;
+
+import java.util.List;
+
+/**
+ * Retry settings as stored on an endpoint record. Every field is optional; unset fields fall back
+ * to the next broader policy (event type -> endpoint -> environment defaults).
+ */
+public class RetryPolicyConfig {
+  private String jitter; // none, full or decorrelated
+  private List<Integer> delaysSeconds; // explicit curve, last entry repeats
+  private Integer baseDelaySeconds; // exponential curve when no explicit delays
+  private Double multiplier;
+  private Integer maxDelaySeconds;
+  private Integer maxAttempts;
+
+  public String getJitter() {
+    return jitter;
+  }
+
+  public void setJitter(String jitter) {
+    this.jitter = jitter;
+  }
+
+  public List<Integer> getDelaysSeconds() {
+    return delaysSeconds;
+  }
+
+  public void setDelaysSeconds(List<Integer> delaysSeconds) {
+    this.delaysSeconds = delaysSeconds;
+  }
+
+  public Integer getBaseDelaySeconds() {
+    return baseDelaySeconds;
+  }
+
+  public void setBaseDelaySeconds(Integer baseDelaySeconds) {
+    this.baseDelaySeconds = baseDelaySeconds;
+  }
+
+  public Double getMultiplier() {
+    return multiplier;
+  }
+
+  public void setMultiplier(Double multiplier) {
+    this.multiplier = multiplier;
+  }
+
+  public Integer getMaxDelaySeconds() {
+    return maxDelaySeconds;
+  }
+
+  public void setMaxDelaySeconds(Integer maxDelaySeconds) {
+    this.maxDelaySeconds = maxDelaySeconds;
+  }
+
+  public Integer getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public void setMaxAttempts(Integer maxAttempts) {
+    this.maxAttempts = maxAttempts;
+  }
+
+  @Override
+  public String toString() {
+    return "RetryPolicyConfig [jitter=" + jitter + ", delaysSeconds=" + delaysSeconds
+        + ", baseDelaySeconds=" + baseDelaySeconds + ", multiplier=" + multiplier
+        + ", maxDelaySeconds=" + maxDelaySeconds + ", maxAttempts=" + maxAttempts + "]";
+  }
+}
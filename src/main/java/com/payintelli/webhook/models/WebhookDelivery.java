@@ -4,9 +4,11 @@ import java.sql.Timestamp;
 
 public class WebhookDelivery {
   private Long id;
+  private String eventId; // publisher event id, unique together with the endpoint
   private Long webhookEndpointId;
   private String eventType;
   private String payload;
+  private String payloadHash; // webhook_payloads key; payload is then not stored on the row
   private Integer responseStatus;
   private String responseBody;
   private Integer attemptCount;
@@ -14,6 +16,7 @@ public class WebhookDelivery {
   private Timestamp createdAt;
   private Timestamp nextRetryAt;
   private String status; // PENDING, DELIVERED, FAILED, ABANDONED
+  private Timestamp enqueuedAt; // when its first SQS message was sent
 
   public WebhookDelivery() {}
 
@@ -26,6 +29,14 @@ public class WebhookDelivery {
     this.id = id;
   }
 
+  public String getEventId() {
+    return eventId;
+  }
+
+  public void setEventId(String eventId) {
+    this.eventId = eventId;
+  }
+
   public Long getWebhookEndpointId() {
     return webhookEndpointId;
   }
@@ -50,6 +61,14 @@ public class WebhookDelivery {
     this.payload = payload;
   }
 
+  public String getPayloadHash() {
+    return payloadHash;
+  }
+
+  public void setPayloadHash(String payloadHash) {
+    this.payloadHash = payloadHash;
+  }
+
   public Integer getResponseStatus() {
     return responseStatus;
   }
@@ -105,4 +124,12 @@ public class WebhookDelivery {
   public void setStatus(String status) {
     this.status = status;
   }
+
+  public Timestamp getEnqueuedAt() {
+    return enqueuedAt;
+  }
+
+  public void setEnqueuedAt(Timestamp enqueuedAt) {
+    this.enqueuedAt = enqueuedAt;
+  }
 }
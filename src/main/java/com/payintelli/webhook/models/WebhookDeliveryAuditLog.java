@@ -0,0 +1,135 @@
+package com.payintelli.webhook.models;
+
+import java.sql.Timestamp;
+
+public class WebhookDeliveryAuditLog {
+  private Long deliveryId;
+  private Integer attemptNumber;
+  private String requestHeaders; // JSON
+  private String requestBody; // null when the payload is referenced by payloadHash
+  private String payloadHash;
+  private Integer responseStatus;
+  private String responseHeaders; // JSON
+  private String responseBody;
+  private Long responseBodyLength;
+  private boolean responseBodyTruncated;
+  private String status;
+  private Timestamp loggedAt;
+
+  public WebhookDeliveryAuditLog() {}
+
+  public WebhookDeliveryAuditLog(Long deliveryId, Integer attemptNumber, String requestHeaders,
+      String requestBody, Integer responseStatus, String responseHeaders,
+      WebhookResponseBody response, String status) {
+    this.deliveryId = deliveryId;
+    this.attemptNumber = attemptNumber;
+    this.requestHeaders = requestHeaders;
+    this.requestBody = requestBody;
+    this.responseStatus = responseStatus;
+    this.responseHeaders = responseHeaders;
+    if (response != null) {
+      this.responseBody = response.getBody();
+      this.responseBodyLength = response.getLength();
+      this.responseBodyTruncated = response.isTruncated();
+    }
+    this.status = status;
+    this.loggedAt = new Timestamp(System.currentTimeMillis());
+  }
+
+  // Getters and setters
+  public Long getDeliveryId() {
+    return deliveryId;
+  }
+
+  public void setDeliveryId(Long deliveryId) {
+    this.deliveryId = deliveryId;
+  }
+
+  public Integer getAttemptNumber() {
+    return attemptNumber;
+  }
+
+  public void setAttemptNumber(Integer attemptNumber) {
+    this.attemptNumber = attemptNumber;
+  }
+
+  public String getRequestHeaders() {
+    return requestHeaders;
+  }
+
+  public void setRequestHeaders(String requestHeaders) {
+    this.requestHeaders = requestHeaders;
+  }
+
+  public String getRequestBody() {
+    return requestBody;
+  }
+
+  public void setRequestBody(String requestBody) {
+    this.requestBody = requestBody;
+  }
+
+  public String getPayloadHash() {
+    return payloadHash;
+  }
+
+  public void setPayloadHash(String payloadHash) {
+    this.payloadHash = payloadHash;
+  }
+
+  public Integer getResponseStatus() {
+    return responseStatus;
+  }
+
+  public void setResponseStatus(Integer responseStatus) {
+    this.responseStatus = responseStatus;
+  }
+
+  public String getResponseHeaders() {
+    return responseHeaders;
+  }
+
+  public void setResponseHeaders(String responseHeaders) {
+    this.responseHeaders = responseHeaders;
+  }
+
+  public String getResponseBody() {
+    return responseBody;
+  }
+
+  public void setResponseBody(String responseBody) {
+    this.responseBody = responseBody;
+  }
+
+  public Long getResponseBodyLength() {
+    return responseBodyLength;
+  }
+
+  public void setResponseBodyLength(Long responseBodyLength) {
+    this.responseBodyLength = responseBodyLength;
+  }
+
+  public boolean isResponseBodyTruncated() {
+    return responseBodyTruncated;
+  }
+
+  public void setResponseBodyTruncated(boolean responseBodyTruncated) {
+    this.responseBodyTruncated = responseBodyTruncated;
+  }
+
+  public String getStatus() {
+    return status;
+  }
+
+  public void setStatus(String status) {
+    this.status = status;
+  }
+
+  public Timestamp getLoggedAt() {
+    return loggedAt;
+  }
+
+  public void setLoggedAt(Timestamp loggedAt) {
+    this.loggedAt = loggedAt;
+  }
+}
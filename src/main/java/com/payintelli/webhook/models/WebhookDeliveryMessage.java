@@ -1,11 +1,26 @@
 package com.payintelli.webhook.models;
 
+import java.nio.charset.StandardCharsets;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.payintelli.webhook.utils.RawJsonDeserializer;
+import com.payintelli.webhook.utils.RawJsonSerializer;
+
 public class WebhookDeliveryMessage {
   private Long deliveryId;
   private Long webhookEndpointId;
   private String eventType;
+
+  // JSON text, embedded in the message as JSON rather than as an escaped string. Null in a claim
+  // check, where only payloadHash travels and the receiver looks the payload up.
+  @JsonDeserialize(using = RawJsonDeserializer.class)
+  @JsonSerialize(using = RawJsonSerializer.class)
   private String payload;
+  private String payloadHash; // webhook_payloads key of payload, null for older messages
   private Integer attemptCount;
+  private Integer retryDelaySeconds; // backoff that preceded this attempt, null for the first
+  private Long deferredSince; // epoch millis of the first deferral of this attempt, else null
+  private Integer deferrals; // times this attempt has been deferred, null if never
 
   public WebhookDeliveryMessage() {}
 
@@ -18,6 +33,35 @@ public class WebhookDeliveryMessage {
     this.attemptCount = attemptCount;
   }
 
+  /**
+   * This message as it is put on the queue: a claim check without the payload if the payload is
+   * stored under payloadHash and has at least {@code claimCheckMinBytes} UTF-8 bytes, otherwise
+   * this message itself.
+   */
+  public WebhookDeliveryMessage forQueue(int claimCheckMinBytes) {
+    if (payload == null || payloadHash == null || !hasAtLeastBytes(payload, claimCheckMinBytes)) {
+      return this;
+    }
+    WebhookDeliveryMessage claimCheck =
+        new WebhookDeliveryMessage(deliveryId, webhookEndpointId, eventType, null, attemptCount);
+    claimCheck.setPayloadHash(payloadHash);
+    claimCheck.setRetryDelaySeconds(retryDelaySeconds);
+    claimCheck.setDeferredSince(deferredSince);
+    claimCheck.setDeferrals(deferrals);
+    return claimCheck;
+  }
+
+  private static boolean hasAtLeastBytes(String text, int bytes) {
+    // A char is 1 to 3 UTF-8 bytes; only encode when that range straddles the limit
+    if (text.length() >= bytes) {
+      return true;
+    }
+    if (text.length() * 3L < bytes) {
+      return false;
+    }
+    return text.getBytes(StandardCharsets.UTF_8).length >= bytes;
+  }
+
   // Getters and setters
   public Long getDeliveryId() {
     return deliveryId;
@@ -51,6 +95,14 @@ public class WebhookDeliveryMessage {
     this.payload = payload;
   }
 
+  public String getPayloadHash() {
+    return payloadHash;
+  }
+
+  public void setPayloadHash(String payloadHash) {
+    this.payloadHash = payloadHash;
+  }
+
   public Integer getAttemptCount() {
     return attemptCount;
   }
@@ -59,10 +111,36 @@ public class WebhookDeliveryMessage {
     this.attemptCount = attemptCount;
   }
 
+  public Integer getRetryDelaySeconds() {
+    return retryDelaySeconds;
+  }
+
+  public void setRetryDelaySeconds(Integer retryDelaySeconds) {
+    this.retryDelaySeconds = retryDelaySeconds;
+  }
+
+  public Long getDeferredSince() {
+    return deferredSince;
+  }
+
+  public void setDeferredSince(Long deferredSince) {
+    this.deferredSince = deferredSince;
+  }
+
+  public Integer getDeferrals() {
+    return deferrals;
+  }
+
+  public void setDeferrals(Integer deferrals) {
+    this.deferrals = deferrals;
+  }
+
   @Override
   public String toString() {
     return "WebhookMessage [deliveryId=" + deliveryId + ", webhookEndpointId=" + webhookEndpointId
-        + ", eventType=" + eventType + ", payload=" + payload + ", attemptCount=" + attemptCount
-        + "]";
+        + ", eventType=" + eventType + ", payloadChars=" + (payload != null ? payload.length() : 0)
+        + ", payloadHash=" + payloadHash
+        + ", attemptCount=" + attemptCount + ", retryDelaySeconds=" + retryDelaySeconds
+        + ", deferredSince=" + deferredSince + ", deferrals=" + deferrals + "]";
   }
 }
@@ -1,6 +1,7 @@
 package com.payintelli.webhook.models;
 
 import java.sql.Timestamp;
+import java.util.Map;
 
 public class WebhookEndpoint {
   private Long id;
@@ -9,6 +10,15 @@ public class WebhookEndpoint {
   private String events; // JSON array string
   private String secret;
   private Boolean isActive;
+  private Boolean timestampedSignature; // sign as "t=<unix>,v1=<hmac of t.payload>"
+  private Double rateLimitPerSecond; // max deliveries per second, null for the default
+  private Integer rateLimitBurst;
+  private String requestEncoding; // "gzip" to compress large request bodies
+  private Boolean batchDelivery; // receive events as a JSON array, one request per batch
+  private Integer batchMaxSize;
+  private Integer batchMaxBytes;
+  private RetryPolicyConfig retryPolicy; // overrides the default retry timing
+  private Map<String, RetryPolicyConfig> retryPolicyByEventType; // on top of retryPolicy
   private Timestamp createdAt;
   private Timestamp updatedAt;
   private String createdBy;
@@ -54,7 +64,14 @@ public class WebhookEndpoint {
   @Override
   public String toString() {
     return "WebhookEndpoint [id=" + id + ", clientId=" + clientId + ", url=" + url + ", events="
-        + events + ", secret=" + secret + ", isActive=" + isActive + ", createdAt=" + createdAt
+        + events + ", secret=" + (secret != null ? "[redacted]" : null) + ", isActive=" + isActive
+        + ", timestampedSignature=" + timestampedSignature
+        + ", rateLimitPerSecond=" + rateLimitPerSecond
+        + ", rateLimitBurst=" + rateLimitBurst + ", requestEncoding=" + requestEncoding
+        + ", batchDelivery=" + batchDelivery
+        + ", batchMaxSize=" + batchMaxSize + ", batchMaxBytes=" + batchMaxBytes
+        + ", retryPolicy=" + retryPolicy
+        + ", retryPolicyByEventType=" + retryPolicyByEventType + ", createdAt=" + createdAt
         + ", updatedAt=" + updatedAt + ", createdBy=" + createdBy + ", notes=" + notes + "]";
   }
 
@@ -82,6 +99,78 @@ public class WebhookEndpoint {
     this.isActive = isActive;
   }
 
+  public Boolean getTimestampedSignature() {
+    return timestampedSignature;
+  }
+
+  public void setTimestampedSignature(Boolean timestampedSignature) {
+    this.timestampedSignature = timestampedSignature;
+  }
+
+  public Double getRateLimitPerSecond() {
+    return rateLimitPerSecond;
+  }
+
+  public void setRateLimitPerSecond(Double rateLimitPerSecond) {
+    this.rateLimitPerSecond = rateLimitPerSecond;
+  }
+
+  public Integer getRateLimitBurst() {
+    return rateLimitBurst;
+  }
+
+  public void setRateLimitBurst(Integer rateLimitBurst) {
+    this.rateLimitBurst = rateLimitBurst;
+  }
+
+  public String getRequestEncoding() {
+    return requestEncoding;
+  }
+
+  public void setRequestEncoding(String requestEncoding) {
+    this.requestEncoding = requestEncoding;
+  }
+
+  public Boolean getBatchDelivery() {
+    return batchDelivery;
+  }
+
+  public void setBatchDelivery(Boolean batchDelivery) {
+    this.batchDelivery = batchDelivery;
+  }
+
+  public Integer getBatchMaxSize() {
+    return batchMaxSize;
+  }
+
+  public void setBatchMaxSize(Integer batchMaxSize) {
+    this.batchMaxSize = batchMaxSize;
+  }
+
+  public Integer getBatchMaxBytes() {
+    return batchMaxBytes;
+  }
+
+  public void setBatchMaxBytes(Integer batchMaxBytes) {
+    this.batchMaxBytes = batchMaxBytes;
+  }
+
+  public RetryPolicyConfig getRetryPolicy() {
+    return retryPolicy;
+  }
+
+  public void setRetryPolicy(RetryPolicyConfig retryPolicy) {
+    this.retryPolicy = retryPolicy;
+  }
+
+  public Map<String, RetryPolicyConfig> getRetryPolicyByEventType() {
+    return retryPolicyByEventType;
+  }
+
+  public void setRetryPolicyByEventType(Map<String, RetryPolicyConfig> retryPolicyByEventType) {
+    this.retryPolicyByEventType = retryPolicyByEventType;
+  }
+
   public Timestamp getCreatedAt() {
     return createdAt;
   }
@@ -1,14 +1,21 @@
 package com.payintelli.webhook.models;
 
 import java.time.Instant;
-import java.util.Map;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.payintelli.webhook.utils.RawJsonDeserializer;
+import com.payintelli.webhook.utils.RawJsonSerializer;
 
 public class WebhookPublisherMessage {
   private String id;
   private String clientId;
   private String eventType;
   private Instant createdAt;
-  private Map<String, Object> data;
+
+  // Raw JSON text of the event data, passed through to receivers unchanged
+  @JsonDeserialize(using = RawJsonDeserializer.class)
+  @JsonSerialize(using = RawJsonSerializer.class)
+  private String data;
 
   public String getId() {
     return id;
@@ -42,17 +49,18 @@ public class WebhookPublisherMessage {
     this.createdAt = createdAt;
   }
 
-  public Map<String, Object> getData() {
+  public String getData() {
     return data;
   }
 
-  public void setData(Map<String, Object> data) {
+  public void setData(String data) {
     this.data = data;
   }
 
   @Override
   public String toString() {
     return "WebhookPublisherMessage [id=" + id + ", clientId=" + clientId + ", eventType="
-        + eventType + ", createdAt=" + createdAt + ", data=" + data + "]";
+        + eventType + ", createdAt=" + createdAt + ", dataChars="
+        + (data != null ? data.length() : 0) + "]";
   }
 }
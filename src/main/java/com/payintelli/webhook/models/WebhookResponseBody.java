@@ -0,0 +1,31 @@
+package com.payintelli.webhook.models;
+
+public class WebhookResponseBody {
+  private final String body;
+  private final Long length; // true length in bytes, null when not a receiver response
+  private final boolean truncated;
+
+  public WebhookResponseBody(String body, Long length, boolean truncated) {
+    this.body = body;
+    this.length = length;
+    this.truncated = truncated;
+  }
+
+  public String getBody() {
+    return body;
+  }
+
+  public Long getLength() {
+    return length;
+  }
+
+  public boolean isTruncated() {
+    return truncated;
+  }
+
+  @Override
+  public String toString() {
+    return "WebhookResponseBody [length=" + length + ", truncated=" + truncated + ", body=" + body
+        + "]";
+  }
+}
@@ -0,0 +1,258 @@
+package com.payintelli.webhook.services;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.postgresql.PGConnection;
+
+/**
+ * Manages the range partitions of webhook_delivery_audit_logs (see
+ * deployment/sql/V2__partition_audit_logs.sql). Partitions are named
+ * {@code webhook_delivery_audit_logs_pYYYYMMDD} (daily) or {@code _pYYYYMM} (monthly) and cover
+ * UTC days or months. Rows from before the migration's cutover stay in
+ * {@code webhook_delivery_audit_logs_legacy}; the partition holding the cutover starts exactly at
+ * it, and the ones the legacy partition already covers aren't created.
+ */
+public class AuditLogPartitionManager {
+  public static final String PARENT_TABLE = "webhook_delivery_audit_logs";
+  public static final String LEGACY_PARTITION = PARENT_TABLE + "_legacy";
+  // Compress request/response bodies from ~512 bytes on instead of ~2 KB (see V4 migration)
+  private static final int TOAST_TUPLE_TARGET = 512;
+  // Bounds are explicit UTC timestamptz literals, independent of the session TimeZone
+  private static final DateTimeFormatter BOUND_FORMAT =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSSSSSx").withZone(ZoneOffset.UTC);
+
+  public enum Granularity {
+    DAILY(DateTimeFormatter.ofPattern("yyyyMMdd")),
+    MONTHLY(DateTimeFormatter.ofPattern("yyyyMM"));
+
+    private final DateTimeFormatter suffixFormat;
+
+    Granularity(DateTimeFormatter suffixFormat) {
+      this.suffixFormat = suffixFormat;
+    }
+
+    LocalDate start(LocalDate date) {
+      return this == DAILY ? date : date.withDayOfMonth(1);
+    }
+
+    LocalDate next(LocalDate start) {
+      return this == DAILY ? start.plusDays(1) : start.plusMonths(1);
+    }
+  }
+
+  private final WebhookDataSource dataSource;
+  private final Granularity granularity;
+
+  public AuditLogPartitionManager(WebhookDataSource dataSource) {
+    this.dataSource = dataSource;
+    this.granularity = Granularity.valueOf(System.getenv("AUDIT_PARTITION_GRANULARITY") != null
+        ? System.getenv("AUDIT_PARTITION_GRANULARITY").toUpperCase()
+        : "DAILY");
+  }
+
+  public Granularity getGranularity() {
+    return granularity;
+  }
+
+  public String partitionFor(Timestamp loggedAt) {
+    return partitionName(startOf(loggedAt));
+  }
+
+  /** Creates the partition holding {@code loggedAt} if it doesn't exist yet. */
+  public void ensurePartition(Timestamp loggedAt) throws SQLException {
+    LocalDate start = startOf(loggedAt);
+    try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+      createPartition(stmt, start, legacyEnd(conn));
+    }
+  }
+
+  /**
+   * Creates the current partition and the next {@code ahead} ones, except those the legacy
+   * partition covers.
+   */
+  public List<String> ensurePartitions(int ahead) throws SQLException {
+    List<String> partitions = new ArrayList<>();
+    LocalDate start = granularity.start(LocalDate.now(ZoneOffset.UTC));
+    try (Connection conn = dataSource.getConnection(); Statement stmt = conn.createStatement()) {
+      Instant legacyEnd = legacyEnd(conn);
+      for (int i = 0; i <= ahead; i++) {
+        String partition = createPartition(stmt, start, legacyEnd);
+        if (partition != null) {
+          partitions.add(partition);
+        }
+        start = granularity.next(start);
+      }
+    }
+    return partitions;
+  }
+
+  /** Start of the oldest UTC day kept under {@code retention}. */
+  public static Instant retentionCutoff(Duration retention) {
+    return LocalDate.now(ZoneOffset.UTC).minusDays(retention.toDays())
+        .atStartOfDay(ZoneOffset.UTC).toInstant();
+  }
+
+  /**
+   * Exports every partition that ended before {@link #retentionCutoff} to
+   * {@code <archiveDir>/<partition>.csv.gz}, and the payloads its rows reference by hash to
+   * {@code <partition>.payloads.csv.gz}, then detaches and drops it. A partition is only dropped
+   * after both files have been completely written.
+   */
+  public List<Path> archiveExpiredPartitions(Duration retention, Path archiveDir)
+      throws Exception {
+    Instant cutoff = retentionCutoff(retention);
+    Files.createDirectories(archiveDir);
+
+    Instant legacyEnd;
+    try (Connection conn = dataSource.getConnection()) {
+      legacyEnd = legacyEnd(conn);
+    }
+
+    List<Path> archived = new ArrayList<>();
+    for (String partition : listPartitions()) {
+      Instant end = partitionEnd(partition, legacyEnd);
+      if (end == null || end.isAfter(cutoff)) {
+        continue;
+      }
+
+      Path segment = archiveDir.resolve(partition + ".csv.gz");
+
+      try (Connection conn = dataSource.getConnection()) {
+        copyOut(conn, "SELECT p.hash, p.payload FROM webhook_payloads p WHERE p.hash IN "
+            + "(SELECT payload_hash FROM " + partition + ")",
+            archiveDir.resolve(partition + ".payloads.csv.gz"));
+        copyOut(conn, "TABLE " + partition, segment);
+
+        try (Statement stmt = conn.createStatement()) {
+          stmt.execute("ALTER TABLE " + PARENT_TABLE + " DETACH PARTITION " + partition);
+          stmt.execute("DROP TABLE " + partition);
+        }
+      }
+      archived.add(segment);
+    }
+    return archived;
+  }
+
+  /** Writes the rows of {@code query} to {@code file} as gzipped CSV, replacing it atomically. */
+  private static void copyOut(Connection conn, String query, Path file) throws Exception {
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (OutputStream out =
+        new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)), 65536)) {
+      conn.unwrap(PGConnection.class).getCopyAPI()
+          .copyOut("COPY (" + query + ") TO STDOUT WITH (FORMAT csv, HEADER)", out);
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Creates the partition starting at {@code start}, or at {@code legacyEnd} if that falls inside
+   * it. Returns its name, or {@code null} if the legacy partition covers it entirely.
+   */
+  private String createPartition(Statement stmt, LocalDate start, Instant legacyEnd)
+      throws SQLException {
+    Instant from = start.atStartOfDay(ZoneOffset.UTC).toInstant();
+    Instant to = granularity.next(start).atStartOfDay(ZoneOffset.UTC).toInstant();
+    if (legacyEnd != null) {
+      if (!legacyEnd.isBefore(to)) {
+        return null;
+      }
+      if (legacyEnd.isAfter(from)) {
+        from = legacyEnd;
+      }
+    }
+
+    String name = partitionName(start);
+    stmt.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF " + PARENT_TABLE
+        + " FOR VALUES FROM ('" + BOUND_FORMAT.format(from) + "')"
+        + " TO ('" + BOUND_FORMAT.format(to) + "')"
+        + " WITH (toast_tuple_target = " + TOAST_TUPLE_TARGET + ")");
+    return name;
+  }
+
+  /**
+   * Upper bound of the attached legacy partition, or {@code null} once it has been archived. The
+   * bound is printed and cast back in the same session, so its TimeZone doesn't matter.
+   */
+  private static Instant legacyEnd(Connection conn) throws SQLException {
+    String sql = "SELECT substring(pg_get_expr(c.relpartbound, c.oid) "
+        + "FROM 'TO \\(''([^'']*)''\\)')::timestamptz "
+        + "FROM pg_class c WHERE c.relname = ? AND c.relispartition";
+
+    try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+      stmt.setString(1, LEGACY_PARTITION);
+      try (ResultSet rs = stmt.executeQuery()) {
+        OffsetDateTime end = rs.next() ? rs.getObject(1, OffsetDateTime.class) : null;
+        return end != null ? end.toInstant() : null;
+      }
+    }
+  }
+
+  private List<String> listPartitions() throws SQLException {
+    String sql = "SELECT c.relname FROM pg_inherits i "
+        + "JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent "
+        + "WHERE p.relname = ? ORDER BY c.relname";
+
+    List<String> partitions = new ArrayList<>();
+    try (Connection conn = dataSource.getConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      stmt.setString(1, PARENT_TABLE);
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          partitions.add(rs.getString(1));
+        }
+      }
+    }
+    return partitions;
+  }
+
+  /** Exclusive upper bound of {@code partition}, {@code null} if it isn't one of ours. */
+  private Instant partitionEnd(String partition, Instant legacyEnd) {
+    if (LEGACY_PARTITION.equals(partition)) {
+      return legacyEnd;
+    }
+    LocalDate start = parseStart(partition);
+    return start != null ? granularity.next(start).atStartOfDay(ZoneOffset.UTC).toInstant() : null;
+  }
+
+  private LocalDate startOf(Timestamp loggedAt) {
+    return granularity.start(loggedAt.toInstant().atZone(ZoneOffset.UTC).toLocalDate());
+  }
+
+  private String partitionName(LocalDate start) {
+    return PARENT_TABLE + "_p" + granularity.suffixFormat.format(start);
+  }
+
+  private LocalDate parseStart(String partition) {
+    String prefix = PARENT_TABLE + "_p";
+    if (!partition.startsWith(prefix)) {
+      return null;
+    }
+    String suffix = partition.substring(prefix.length());
+    try {
+      return granularity == Granularity.DAILY
+          ? LocalDate.parse(suffix, granularity.suffixFormat)
+          : LocalDate.parse(suffix + "01", DateTimeFormatter.ofPattern("yyyyMMdd"));
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,57 @@
+package com.payintelli.webhook.services;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups deliveries per endpoint into batches. A group is handed back as soon as it reaches
+ * {@code maxCount} items or would exceed {@code maxBytes}; {@link #drainAll()} returns whatever
+ * is left. There is no time-based flush: a Lambda invocation has its whole SQS batch in hand, so
+ * callers add everything and then drain. Not thread safe.
+ */
+public class DeliveryBatchAccumulator<T> {
+
+  private final Map<Long, Group<T>> groups = new LinkedHashMap<>();
+
+  /**
+   * Adds {@code item} to the group of {@code endpointId} and returns the batches that are ready
+   * to be sent, possibly none.
+   */
+  public List<List<T>> add(Long endpointId, T item, int bytes, int maxCount, int maxBytes) {
+    List<List<T>> ready = new ArrayList<>();
+
+    Group<T> group = groups.get(endpointId);
+    if (group != null && !group.items.isEmpty() && group.bytes + bytes > maxBytes) {
+      ready.add(group.items);
+      group = null;
+    }
+    if (group == null) {
+      group = new Group<>();
+      groups.put(endpointId, group);
+    }
+    group.items.add(item);
+    group.bytes += bytes;
+
+    if (group.items.size() >= maxCount || group.bytes >= maxBytes) {
+      ready.add(group.items);
+      groups.remove(endpointId);
+    }
+    return ready;
+  }
+
+  public List<List<T>> drainAll() {
+    List<List<T>> ready = new ArrayList<>(groups.size());
+    for (Group<T> group : groups.values()) {
+      ready.add(group.items);
+    }
+    groups.clear();
+    return ready;
+  }
+
+  private static final class Group<T> {
+    private final List<T> items = new ArrayList<>();
+    private int bytes;
+  }
+}
@@ -0,0 +1,25 @@
+package com.payintelli.webhook.services;
+
+import java.util.List;
+import java.util.Map;
+import com.payintelli.webhook.models.WebhookDeliveryMessage;
+
+/** Queue feeding WebhookDeliveryLambda. {@link SqsDeliveryQueue} is the SQS implementation. */
+public interface DeliveryQueue {
+
+  /** Enqueues {@code message}, visible to consumers after {@code delaySeconds} (at most 900). */
+  void send(WebhookDeliveryMessage message, int delaySeconds) throws Exception;
+
+  /**
+   * Enqueues {@code messages} for immediate delivery. Messages the queue rejected are reported in
+   * the result rather than thrown, so callers can record what did go through.
+   */
+  SendResult sendAll(List<WebhookDeliveryMessage> messages) throws Exception;
+
+  /**
+   * Outcome of {@link #sendAll}: the accepted delivery ids, and the reason each rejected one was
+   * refused (e.g. {@code "AccessDenied: ..."}), by delivery id.
+   */
+  record SendResult(List<Long> enqueued, Map<Long, String> failures) {
+  }
+}
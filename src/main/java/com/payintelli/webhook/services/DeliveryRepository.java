@@ -0,0 +1,63 @@
+package com.payintelli.webhook.services;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import com.payintelli.webhook.models.WebhookDelivery;
+import com.payintelli.webhook.models.WebhookDeliveryAuditLog;
+import com.payintelli.webhook.models.WebhookDeliveryMessage;
+import com.payintelli.webhook.models.WebhookResponseBody;
+
+/**
+ * Delivery rows, their audit trail and stored payloads. {@link WebhookDatabaseService} is the
+ * Postgres implementation; see it for the exact semantics of each operation.
+ */
+public interface DeliveryRepository {
+
+  /** Receives deliveries whose retry is due and returns the ids it managed to enqueue. */
+  interface RetryDispatcher {
+    List<Long> dispatch(List<WebhookDeliveryMessage> due) throws Exception;
+  }
+
+  /**
+   * Creates one delivery per (event id, endpoint), or returns the existing one. Sets id and
+   * enqueuedAt on each delivery and returns the ids in order.
+   */
+  List<Long> createWebhookDeliveries(List<WebhookDelivery> deliveries) throws SQLException;
+
+  void markDeliveriesEnqueued(List<Long> deliveryIds) throws SQLException;
+
+  /** The subset of {@code deliveryIds} that is already DELIVERED. */
+  Set<Long> findDeliveredIds(List<Long> deliveryIds) throws SQLException;
+
+  /** Payload stored under {@code hash}, or {@code null}. */
+  String findPayload(String hash) throws SQLException;
+
+  /** Payloads stored under any of {@code hashes}, by hash; unknown hashes are left out. */
+  Map<String, String> findPayloads(Collection<String> hashes) throws SQLException;
+
+  /** Records the outcome of a delivery attempt; a DELIVERED delivery is never changed. */
+  void updateDeliveryState(Long deliveryId, Integer responseStatus, WebhookResponseBody response,
+      String status, Timestamp nextRetryAt, Integer attemptCount) throws SQLException;
+
+  /**
+   * Changes status and retry time without touching the stored response of the last attempt; a
+   * DELIVERED delivery is never changed.
+   */
+  void updateDeliveryStatus(Long deliveryId, String status, Timestamp nextRetryAt,
+      Integer attemptCount) throws SQLException;
+
+  /**
+   * Claims up to {@code limit} SCHEDULED deliveries that are due, passes them to
+   * {@code dispatcher} and marks the enqueued ones PENDING. The ones it didn't enqueue stay
+   * SCHEDULED, due again a few minutes later.
+   *
+   * @return the number of claimed deliveries
+   */
+  int dispatchDueRetries(int limit, RetryDispatcher dispatcher) throws Exception;
+
+  void insertWebhookDeliveryLogs(List<WebhookDeliveryAuditLog> logs) throws SQLException;
+}
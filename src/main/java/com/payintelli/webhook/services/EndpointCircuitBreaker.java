@@ -0,0 +1,214 @@
+package com.payintelli.webhook.services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-endpoint circuit breaker. Outcomes of the last {@code windowSize} calls are kept per
+ * endpoint; once at least {@code minimumCalls} were made and the failure rate reaches
+ * {@code failureRatePercent}, the circuit opens for {@code openMillis}. After that up to
+ * {@code halfOpenProbes} calls are let through: a successful probe closes the circuit, a failed
+ * one opens it again.
+ *
+ * <p>State lives for the lifetime of the container, so it carries over warm invocations. With a
+ * shared store the open-until time is also written to DynamoDB and picked up by other containers
+ * from the store's cached copy.
+ */
+public class EndpointCircuitBreaker {
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  /** Outcome of {@link #acquire}; pass it back to {@link #onResult}. */
+  public record Permit(boolean allowed, boolean probe, long retryAfterMillis) {
+    private static final Permit ALLOWED = new Permit(true, false, 0);
+    private static final Permit PROBE = new Permit(true, true, 0);
+  }
+
+  private final Map<Long, Circuit> circuits = new ConcurrentHashMap<>();
+  private final EndpointStore sharedStore;
+  private final int windowSize;
+  private final int minimumCalls;
+  private final int failureRatePercent;
+  private final long openMillis;
+  private final int halfOpenProbes;
+
+  /** @param sharedStore where open circuits are published, or {@code null} to keep them local */
+  public EndpointCircuitBreaker(EndpointStore sharedStore) {
+    this.sharedStore = sharedStore;
+    this.windowSize = Integer.parseInt(System.getenv("CIRCUIT_BREAKER_WINDOW") != null
+        ? System.getenv("CIRCUIT_BREAKER_WINDOW")
+        : "20");
+    this.minimumCalls = Integer.parseInt(System.getenv("CIRCUIT_BREAKER_MIN_CALLS") != null
+        ? System.getenv("CIRCUIT_BREAKER_MIN_CALLS")
+        : "10");
+    this.failureRatePercent = Integer.parseInt(
+        System.getenv("CIRCUIT_BREAKER_FAILURE_RATE") != null
+            ? System.getenv("CIRCUIT_BREAKER_FAILURE_RATE")
+            : "50");
+    this.openMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(
+        System.getenv("CIRCUIT_BREAKER_OPEN_SECONDS") != null
+            ? System.getenv("CIRCUIT_BREAKER_OPEN_SECONDS")
+            : "60"));
+    this.halfOpenProbes = Integer.parseInt(
+        System.getenv("CIRCUIT_BREAKER_HALF_OPEN_PROBES") != null
+            ? System.getenv("CIRCUIT_BREAKER_HALF_OPEN_PROBES")
+            : "1");
+  }
+
+  /**
+   * Decides whether a call to {@code endpointId} may go out now. A denied permit carries how long
+   * the caller should wait before trying again.
+   */
+  public Permit acquire(Long endpointId) {
+    Circuit circuit = circuits.computeIfAbsent(endpointId, k -> new Circuit(windowSize));
+    syncShared(endpointId, circuit);
+
+    synchronized (circuit) {
+      long now = System.currentTimeMillis();
+      if (circuit.state == State.CLOSED) {
+        return Permit.ALLOWED;
+      }
+      if (circuit.state == State.OPEN) {
+        if (now < circuit.openUntil) {
+          return new Permit(false, false, circuit.openUntil - now);
+        }
+        circuit.state = State.HALF_OPEN;
+        circuit.probesInFlight = 0;
+      }
+      if (circuit.probesInFlight < halfOpenProbes) {
+        circuit.probesInFlight++;
+        return Permit.PROBE;
+      }
+      return new Permit(false, false, openMillis);
+    }
+  }
+
+  /** Records the outcome of a call made under {@code permit}. */
+  public void onResult(Long endpointId, Permit permit, boolean success) {
+    Circuit circuit = circuits.get(endpointId);
+    if (circuit == null || !permit.allowed()) {
+      return;
+    }
+
+    long publish = -1;
+    synchronized (circuit) {
+      long now = System.currentTimeMillis();
+      if (permit.probe()) {
+        circuit.probesInFlight = Math.max(0, circuit.probesInFlight - 1);
+        if (success) {
+          circuit.close();
+          publish = 0;
+        } else {
+          circuit.open(now + openMillis);
+          publish = circuit.openUntil;
+        }
+      } else if (circuit.state == State.CLOSED) {
+        circuit.record(!success);
+        if (circuit.count >= minimumCalls
+            && circuit.failures * 100 >= failureRatePercent * circuit.count) {
+          circuit.open(now + openMillis);
+          publish = circuit.openUntil;
+        }
+      }
+    }
+
+    if (publish >= 0 && sharedStore != null) {
+      try {
+        sharedStore.putCircuitOpenUntil(endpointId, publish);
+      } catch (Exception e) {
+        // Best effort: the local breaker keeps working without the shared copy
+      }
+    }
+  }
+
+  /** Gives back {@code permit} for a call that was never made, recording no outcome. */
+  public void release(Long endpointId, Permit permit) {
+    Circuit circuit = circuits.get(endpointId);
+    if (circuit == null || !permit.probe()) {
+      return;
+    }
+    synchronized (circuit) {
+      circuit.probesInFlight = Math.max(0, circuit.probesInFlight - 1);
+    }
+  }
+
+  public State getState(Long endpointId) {
+    Circuit circuit = circuits.get(endpointId);
+    if (circuit == null) {
+      return State.CLOSED;
+    }
+    synchronized (circuit) {
+      return circuit.state;
+    }
+  }
+
+  /** Picks up a circuit opened by another container; the store answers from its cache. */
+  private void syncShared(Long endpointId, Circuit circuit) {
+    if (sharedStore == null) {
+      return;
+    }
+    synchronized (circuit) {
+      if (circuit.state != State.CLOSED) {
+        return;
+      }
+    }
+
+    long openUntil;
+    try {
+      openUntil = sharedStore.getCircuitOpenUntil(endpointId);
+    } catch (Exception e) {
+      return;
+    }
+
+    synchronized (circuit) {
+      if (circuit.state == State.CLOSED && openUntil > System.currentTimeMillis()) {
+        circuit.open(openUntil);
+      }
+    }
+  }
+
+  private static final class Circuit {
+    private final boolean[] outcomes;
+    private int next;
+    private int count;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openUntil;
+    private int probesInFlight;
+
+    Circuit(int windowSize) {
+      this.outcomes = new boolean[windowSize];
+    }
+
+    void record(boolean failure) {
+      if (count == outcomes.length) {
+        if (outcomes[next]) {
+          failures--;
+        }
+      } else {
+        count++;
+      }
+      outcomes[next] = failure;
+      if (failure) {
+        failures++;
+      }
+      next = (next + 1) % outcomes.length;
+    }
+
+    void open(long until) {
+      state = State.OPEN;
+      openUntil = until;
+    }
+
+    void close() {
+      state = State.CLOSED;
+      openUntil = 0;
+      next = 0;
+      count = 0;
+      failures = 0;
+    }
+  }
+}
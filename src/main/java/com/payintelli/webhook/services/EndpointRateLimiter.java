@@ -0,0 +1,225 @@
+package com.payintelli.webhook.services;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import com.payintelli.webhook.models.WebhookEndpoint;
+
+/**
+ * Token bucket per endpoint with AIMD adjustment. The bucket refills at the endpoint's
+ * rateLimitPerSecond (or ENDPOINT_RATE_LIMIT_PER_SECOND) and holds up to rateLimitBurst tokens.
+ * A 429/503, a failed request or a latency average above the target halves the current rate, at
+ * most once per round trip (the latency average): the other requests in flight at the time report
+ * the same overload and must not halve it again. Every healthy response adds back a fixed share
+ * of the configured rate. A Retry-After header blocks the endpoint until the given time.
+ *
+ * <p>Buckets are per container: with N concurrent containers an endpoint can see up to N times
+ * the configured rate.
+ */
+public class EndpointRateLimiter {
+
+  private static final double LATENCY_EWMA_WEIGHT = 0.2;
+  private static final long MIN_DECREASE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final Map<Long, Bucket> buckets = new ConcurrentHashMap<>();
+  private final double defaultRate;
+  private final int defaultBurst;
+  private final double minRate;
+  private final double decreaseFactor;
+  private final double increaseShare;
+  private final double latencyTargetMillis;
+  private final long maxRetryAfterMillis;
+
+  public EndpointRateLimiter() {
+    this.defaultRate = Double.parseDouble(System.getenv("ENDPOINT_RATE_LIMIT_PER_SECOND") != null
+        ? System.getenv("ENDPOINT_RATE_LIMIT_PER_SECOND")
+        : "50");
+    this.defaultBurst = Integer.parseInt(System.getenv("ENDPOINT_RATE_LIMIT_BURST") != null
+        ? System.getenv("ENDPOINT_RATE_LIMIT_BURST")
+        : "100");
+    this.minRate = Double.parseDouble(System.getenv("ENDPOINT_RATE_LIMIT_MIN_PER_SECOND") != null
+        ? System.getenv("ENDPOINT_RATE_LIMIT_MIN_PER_SECOND")
+        : "0.2");
+    this.decreaseFactor = 0.5;
+    this.increaseShare = 0.05;
+    this.latencyTargetMillis = Double.parseDouble(
+        System.getenv("ENDPOINT_LATENCY_TARGET_MS") != null
+            ? System.getenv("ENDPOINT_LATENCY_TARGET_MS")
+            : "5000");
+    this.maxRetryAfterMillis = TimeUnit.HOURS.toMillis(1);
+  }
+
+  /**
+   * Takes a token for {@code endpoint}. Returns 0 if the delivery may go out now, otherwise the
+   * number of milliseconds until it can.
+   */
+  public long acquire(WebhookEndpoint endpoint) {
+    Bucket bucket = bucketFor(endpoint);
+    synchronized (bucket) {
+      long now = System.nanoTime();
+      if (now - bucket.blockedUntil < 0) {
+        return TimeUnit.NANOSECONDS.toMillis(bucket.blockedUntil - now) + 1;
+      }
+      bucket.refill(now);
+      if (bucket.tokens >= 1) {
+        bucket.tokens -= 1;
+        return 0;
+      }
+      return (long) Math.ceil((1 - bucket.tokens) / bucket.rate * 1000);
+    }
+  }
+
+  /** Returns a token taken by {@link #acquire} for a delivery that didn't go out after all. */
+  public void refund(WebhookEndpoint endpoint) {
+    Bucket bucket = bucketFor(endpoint);
+    synchronized (bucket) {
+      bucket.refund();
+    }
+  }
+
+  /** Feeds a receiver response back into the endpoint's rate. */
+  public void onResponse(WebhookEndpoint endpoint, int statusCode, long latencyMillis,
+      String retryAfter) {
+    Bucket bucket = bucketFor(endpoint);
+    synchronized (bucket) {
+      bucket.observeLatency(latencyMillis);
+      if (statusCode == 429 || statusCode == 503) {
+        bucket.decrease(decreaseFactor, minRate);
+        long retryAfterMillis = parseRetryAfter(retryAfter);
+        if (retryAfterMillis > 0) {
+          bucket.blockedUntil = System.nanoTime()
+              + TimeUnit.MILLISECONDS.toNanos(Math.min(retryAfterMillis, maxRetryAfterMillis));
+        }
+      } else if (bucket.latencyEwma > latencyTargetMillis) {
+        bucket.decrease(decreaseFactor, minRate);
+      } else {
+        bucket.increase(increaseShare);
+      }
+    }
+  }
+
+  /** A request that failed without a response (timeout, refused connection). */
+  public void onError(WebhookEndpoint endpoint, long latencyMillis) {
+    Bucket bucket = bucketFor(endpoint);
+    synchronized (bucket) {
+      bucket.observeLatency(latencyMillis);
+      bucket.decrease(decreaseFactor, minRate);
+    }
+  }
+
+  public double getCurrentRate(Long endpointId) {
+    Bucket bucket = buckets.get(endpointId);
+    if (bucket == null) {
+      return defaultRate;
+    }
+    synchronized (bucket) {
+      return bucket.rate;
+    }
+  }
+
+  /** Retry-After as delta seconds or HTTP date, in milliseconds from now; -1 if absent/invalid. */
+  public static long parseRetryAfter(String value) {
+    if (value == null || value.isBlank()) {
+      return -1;
+    }
+    String trimmed = value.trim();
+    try {
+      return TimeUnit.SECONDS.toMillis(Long.parseLong(trimmed));
+    } catch (NumberFormatException e) {
+      // Not delta seconds, try an HTTP date
+    }
+    try {
+      ZonedDateTime at = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME);
+      return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+    } catch (DateTimeParseException e) {
+      return -1;
+    }
+  }
+
+  private Bucket bucketFor(WebhookEndpoint endpoint) {
+    double rate = endpoint.getRateLimitPerSecond() != null && endpoint.getRateLimitPerSecond() > 0
+        ? endpoint.getRateLimitPerSecond()
+        : defaultRate;
+    int burst = endpoint.getRateLimitBurst() != null && endpoint.getRateLimitBurst() > 0
+        ? endpoint.getRateLimitBurst()
+        : Math.max(defaultBurst, (int) Math.ceil(rate));
+
+    Bucket bucket = buckets.computeIfAbsent(endpoint.getId(), k -> new Bucket(rate, burst));
+    synchronized (bucket) {
+      // Endpoint config was changed since the bucket was created
+      if (bucket.configuredRate != rate || bucket.burst != burst) {
+        bucket.reconfigure(rate, burst);
+      }
+    }
+    return bucket;
+  }
+
+  private static final class Bucket {
+    private double configuredRate;
+    private int burst;
+    private double rate;
+    private double tokens;
+    private long refilledAt;
+    private long blockedUntil;
+    private long decreasedAt;
+    private double latencyEwma;
+
+    Bucket(double rate, int burst) {
+      this.configuredRate = rate;
+      this.rate = rate;
+      this.burst = burst;
+      this.tokens = burst;
+      this.refilledAt = System.nanoTime();
+      this.blockedUntil = refilledAt;
+      // Long enough ago that the first overload always counts, whatever the round trip
+      this.decreasedAt = refilledAt - TimeUnit.DAYS.toNanos(1);
+    }
+
+    void refill(long now) {
+      // Burst shrinks with the rate so a tightened endpoint doesn't get a full burst back
+      double capacity = Math.max(1, burst * rate / configuredRate);
+      tokens = Math.min(capacity, tokens + (now - refilledAt) / 1e9 * rate);
+      refilledAt = now;
+    }
+
+    void reconfigure(double newRate, int newBurst) {
+      refill(System.nanoTime());
+      // Keep an AIMD reduction in place, but never above the new configured rate
+      rate = rate < configuredRate ? Math.min(rate, newRate) : newRate;
+      configuredRate = newRate;
+      burst = newBurst;
+      tokens = Math.min(tokens, newBurst);
+    }
+
+    void refund() {
+      refill(System.nanoTime());
+      tokens = Math.min(Math.max(1, burst * rate / configuredRate), tokens + 1);
+    }
+
+    void decrease(double factor, double minRate) {
+      long now = System.nanoTime();
+      long window = Math.max(MIN_DECREASE_INTERVAL_NANOS,
+          TimeUnit.MILLISECONDS.toNanos((long) latencyEwma));
+      if (now - decreasedAt < window) {
+        return;
+      }
+      refill(now);
+      rate = Math.max(Math.min(minRate, configuredRate), rate * factor);
+      decreasedAt = now;
+    }
+
+    void increase(double share) {
+      refill(System.nanoTime());
+      rate = Math.min(configuredRate, rate + configuredRate * share);
+    }
+
+    void observeLatency(long latencyMillis) {
+      latencyEwma = latencyEwma == 0 ? latencyMillis
+          : latencyEwma + LATENCY_EWMA_WEIGHT * (latencyMillis - latencyEwma);
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package com.payintelli.webhook.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payintelli.webhook.models.WebhookEndpoint;
+
+/**
+ * Subscription index built once per endpoint config load: clientId -> eventType -> active
+ * endpoints. Event patterns are dot separated; a {@code *} segment matches exactly one segment,
+ * and a trailing {@code *} matches one or more remaining segments, so {@code payment.*} matches
+ * {@code payment.refunded} but not {@code payment} itself.
+ */
+public class EndpointRoutingIndex {
+
+  private static final int MAX_RESOLVED_EVENT_TYPES = 1024;
+
+  private final Map<String, ClientRoutes> clients;
+
+  private EndpointRoutingIndex(Map<String, ClientRoutes> clients) {
+    this.clients = clients;
+  }
+
+  public static EndpointRoutingIndex build(List<WebhookEndpoint> endpoints,
+      ObjectMapper objectMapper) {
+    Map<String, Map<String, List<WebhookEndpoint>>> exact = new HashMap<>();
+    Map<String, TrieNode> wildcards = new HashMap<>();
+
+    for (WebhookEndpoint endpoint : endpoints) {
+      if (endpoint.getClientId() == null || !Boolean.TRUE.equals(endpoint.getIsActive())) {
+        continue;
+      }
+      for (String pattern : parseEvents(endpoint.getEvents(), objectMapper)) {
+        if (pattern.indexOf('*') < 0) {
+          exact.computeIfAbsent(endpoint.getClientId(), k -> new HashMap<>())
+              .computeIfAbsent(pattern, k -> new ArrayList<>()).add(endpoint);
+        } else {
+          wildcards.computeIfAbsent(endpoint.getClientId(), k -> new TrieNode())
+              .insert(pattern.split("\\."), endpoint);
+        }
+      }
+    }
+
+    Map<String, ClientRoutes> clients = new HashMap<>();
+    Set<String> clientIds = new LinkedHashSet<>(exact.keySet());
+    clientIds.addAll(wildcards.keySet());
+    for (String clientId : clientIds) {
+      Map<String, List<WebhookEndpoint>> byEvent = new HashMap<>();
+      exact.getOrDefault(clientId, Map.of())
+          .forEach((eventType, matches) -> byEvent.put(eventType, dedupe(matches)));
+      clients.put(clientId, new ClientRoutes(byEvent, wildcards.get(clientId)));
+    }
+    return new EndpointRoutingIndex(clients);
+  }
+
+  /**
+   * Returns the active endpoints of {@code clientId} subscribed to {@code eventType}. Exact
+   * subscriptions are a single map lookup; wildcard matches are resolved once per event type and
+   * then served from the same immutable list.
+   */
+  public List<WebhookEndpoint> find(String clientId, String eventType) {
+    ClientRoutes routes = clients.get(clientId);
+    if (routes == null || eventType == null) {
+      return List.of();
+    }
+    return routes.find(eventType);
+  }
+
+  private static List<String> parseEvents(String events, ObjectMapper objectMapper) {
+    if (events == null || events.isBlank()) {
+      return List.of();
+    }
+    try {
+      String[] parsed = objectMapper.readValue(events, String[].class);
+      List<String> patterns = new ArrayList<>(parsed.length);
+      for (String pattern : parsed) {
+        if (pattern != null && !pattern.isBlank()) {
+          patterns.add(pattern.trim());
+        }
+      }
+      return patterns;
+    } catch (Exception e) {
+      // Not a JSON array: treat the endpoint as subscribed to nothing rather than substring match
+      return List.of();
+    }
+  }
+
+  private static List<WebhookEndpoint> dedupe(List<WebhookEndpoint> endpoints) {
+    return List.copyOf(new LinkedHashSet<>(endpoints));
+  }
+
+  private static final class ClientRoutes {
+    private final Map<String, List<WebhookEndpoint>> exact;
+    private final TrieNode wildcards;
+    private final Map<String, List<WebhookEndpoint>> resolved;
+
+    ClientRoutes(Map<String, List<WebhookEndpoint>> exact, TrieNode wildcards) {
+      this.exact = exact;
+      this.wildcards = wildcards;
+      this.resolved = wildcards != null ? new ConcurrentHashMap<>() : null;
+    }
+
+    List<WebhookEndpoint> find(String eventType) {
+      if (wildcards == null) {
+        return exact.getOrDefault(eventType, List.of());
+      }
+      List<WebhookEndpoint> matches = resolved.get(eventType);
+      if (matches != null) {
+        return matches;
+      }
+      matches = resolve(eventType);
+      if (resolved.size() < MAX_RESOLVED_EVENT_TYPES) {
+        resolved.putIfAbsent(eventType, matches);
+      }
+      return matches;
+    }
+
+    private List<WebhookEndpoint> resolve(String eventType) {
+      Set<WebhookEndpoint> matches =
+          new LinkedHashSet<>(exact.getOrDefault(eventType, List.of()));
+      wildcards.match(eventType.split("\\."), 0, matches);
+      return List.copyOf(matches);
+    }
+  }
+
+  private static final class TrieNode {
+    private final Map<String, TrieNode> children = new HashMap<>();
+    private TrieNode star;
+    private final List<WebhookEndpoint> terminal = new ArrayList<>();
+    private final List<WebhookEndpoint> remainder = new ArrayList<>();
+
+    void insert(String[] segments, WebhookEndpoint endpoint) {
+      TrieNode node = this;
+      for (int i = 0; i < segments.length; i++) {
+        String segment = segments[i];
+        if ("*".equals(segment) && i == segments.length - 1) {
+          node.remainder.add(endpoint);
+          return;
+        }
+        if ("*".equals(segment)) {
+          if (node.star == null) {
+            node.star = new TrieNode();
+          }
+          node = node.star;
+        } else {
+          node = node.children.computeIfAbsent(segment, k -> new TrieNode());
+        }
+      }
+      node.terminal.add(endpoint);
+    }
+
+    void match(String[] segments, int index, Set<WebhookEndpoint> out) {
+      if (index == segments.length) {
+        out.addAll(terminal);
+        return;
+      }
+      out.addAll(remainder);
+
+      TrieNode child = children.get(segments[index]);
+      if (child != null) {
+        child.match(segments, index + 1, out);
+      }
+      if (star != null) {
+        star.match(segments, index + 1, out);
+      }
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package com.payintelli.webhook.services;
+
+import java.util.List;
+import com.payintelli.webhook.models.WebhookEndpoint;
+
+/**
+ * Endpoint configuration and the shared circuit state kept next to it.
+ * {@link WebhookDynamoDbService} is the DynamoDB implementation.
+ */
+public interface EndpointStore {
+
+  List<WebhookEndpoint> findActiveEndpointsByEvent(String clientId, String eventType)
+      throws Exception;
+
+  WebhookEndpoint findEndpointById(Long endpointId) throws Exception;
+
+  /**
+   * Epoch millis until which the endpoint's circuit is open for all containers, 0 if closed.
+   * Called for every delivery, so implementations answer from a periodically refreshed cache.
+   */
+  long getCircuitOpenUntil(Long endpointId);
+
+  void putCircuitOpenUntil(Long endpointId, long openUntilMillis);
+}
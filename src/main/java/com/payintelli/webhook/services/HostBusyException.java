@@ -0,0 +1,12 @@
+package com.payintelli.webhook.services;
+
+/**
+ * Thrown by {@link WebhookHttpService} when a request couldn't get one of its host's in-flight
+ * slots in time. Nothing was sent, so it says nothing about the receiver's health.
+ */
+public class HostBusyException extends Exception {
+
+  public HostBusyException(String host) {
+    super("Too many in-flight requests to " + host);
+  }
+}
@@ -0,0 +1,133 @@
+package com.payintelli.webhook.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequest;
+import com.amazonaws.services.sqs.model.SendMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.SendMessageBatchResult;
+import com.amazonaws.services.sqs.model.SendMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payintelli.webhook.models.WebhookDeliveryMessage;
+import com.payintelli.webhook.utils.StructuredLogger;
+import org.crac.Core;
+import org.crac.Resource;
+
+/**
+ * Delivery queue on SQS. Multiple messages go out with SendMessageBatch, split at 10 entries or
+ * 256 KB per request; entries are keyed by delivery id. Payloads of CLAIM_CHECK_MIN_BYTES or more
+ * are left out of the message and referenced by hash (see
+ * {@link WebhookDeliveryMessage#forQueue}). Rejected entries and failed requests are logged and
+ * returned with their SQS error code and message.
+ */
+public class SqsDeliveryQueue implements DeliveryQueue, Resource {
+  private static final StructuredLogger log = StructuredLogger.getLogger(SqsDeliveryQueue.class);
+
+  private static final int SQS_MAX_BATCH_SIZE = 10;
+  private static final int SQS_MAX_BATCH_BYTES = 256 * 1024;
+
+  private final AmazonSQS sqs;
+  private final String queueUrl;
+  private final int claimCheckMinBytes;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  public SqsDeliveryQueue(String queueUrl) {
+    this(AmazonSQSClientBuilder.defaultClient(), queueUrl);
+  }
+
+  public SqsDeliveryQueue(AmazonSQS sqs, String queueUrl) {
+    this.sqs = sqs;
+    this.queueUrl = queueUrl;
+    // Keeps inline messages within one 64 KB SQS billing chunk
+    this.claimCheckMinBytes = Integer.parseInt(System.getenv("CLAIM_CHECK_MIN_BYTES") != null
+        ? System.getenv("CLAIM_CHECK_MIN_BYTES")
+        : "61440");
+
+    Core.getGlobalContext().register(this);
+  }
+
+  /** Serializes a dummy message so the snapshot holds a warmed up mapper. */
+  @Override
+  public void beforeCheckpoint(org.crac.Context<? extends Resource> context) throws Exception {
+    WebhookDeliveryMessage message =
+        new WebhookDeliveryMessage(0L, 0L, "priming", "{\"priming\":true}", 1);
+    message.setPayloadHash("priming");
+    message.setRetryDelaySeconds(1);
+    objectMapper.writeValueAsString(message);
+  }
+
+  @Override
+  public void afterRestore(org.crac.Context<? extends Resource> context) {
+    // Nothing to do: priming sends nothing, so the client has no connections to drop
+  }
+
+  @Override
+  public void send(WebhookDeliveryMessage message, int delaySeconds) throws Exception {
+    sqs.sendMessage(new SendMessageRequest().withQueueUrl(queueUrl)
+        .withMessageBody(objectMapper.writeValueAsString(message.forQueue(claimCheckMinBytes)))
+        .withDelaySeconds(delaySeconds));
+  }
+
+  @Override
+  public SendResult sendAll(List<WebhookDeliveryMessage> messages) throws Exception {
+    List<Long> enqueued = new ArrayList<>(messages.size());
+    Map<Long, String> failures = new LinkedHashMap<>();
+    List<SendMessageBatchRequestEntry> entries = new ArrayList<>(SQS_MAX_BATCH_SIZE);
+    int batchBytes = 0;
+    for (WebhookDeliveryMessage message : messages) {
+      String messageBody = objectMapper.writeValueAsString(message.forQueue(claimCheckMinBytes));
+      int messageBytes = messageBody.getBytes(StandardCharsets.UTF_8).length;
+
+      if (entries.size() == SQS_MAX_BATCH_SIZE
+          || (!entries.isEmpty() && batchBytes + messageBytes > SQS_MAX_BATCH_BYTES)) {
+        sendMessageBatch(entries, enqueued, failures);
+        entries.clear();
+        batchBytes = 0;
+      }
+      entries.add(
+          new SendMessageBatchRequestEntry(String.valueOf(message.getDeliveryId()), messageBody));
+      batchBytes += messageBytes;
+    }
+    if (!entries.isEmpty()) {
+      sendMessageBatch(entries, enqueued, failures);
+    }
+    return new SendResult(enqueued, failures);
+  }
+
+  private void sendMessageBatch(List<SendMessageBatchRequestEntry> entries, List<Long> enqueued,
+      Map<Long, String> failures) {
+    SendMessageBatchResult result;
+    try {
+      result = sqs.sendMessageBatch(new SendMessageBatchRequest().withQueueUrl(queueUrl)
+          .withEntries(new ArrayList<>(entries)));
+    } catch (AmazonClientException e) {
+      // The whole request failed; earlier batches stay accepted
+      String reason = e instanceof AmazonServiceException service
+          ? service.getErrorCode() + ": " + service.getErrorMessage()
+          : e.getMessage();
+      log.warn("queue.failure").with("entries", entries.size()).with("reason", reason)
+          .cause(e).log("SendMessageBatch request failed");
+      for (SendMessageBatchRequestEntry entry : entries) {
+        failures.put(Long.parseLong(entry.getId()), reason);
+      }
+      return;
+    }
+    for (SendMessageBatchResultEntry sent : result.getSuccessful()) {
+      enqueued.add(Long.parseLong(sent.getId()));
+    }
+    for (BatchResultErrorEntry failed : result.getFailed()) {
+      String reason = failed.getCode() + ": " + failed.getMessage();
+      log.warn("queue.failure").with("deliveryId", failed.getId()).with("reason", reason)
+          .with("senderFault", failed.getSenderFault()).log("SQS rejected delivery message");
+      failures.put(Long.parseLong(failed.getId()), reason);
+    }
+  }
+}
@@ -0,0 +1,168 @@
+package com.payintelli.webhook.services;
+
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import com.payintelli.webhook.models.WebhookDeliveryAuditLog;
+import com.payintelli.webhook.utils.StructuredLogger;
+
+/**
+ * Write-behind buffer for webhook_delivery_audit_logs. Rows are inserted as JDBC batches by a
+ * background flusher once {@code batchSize} rows are waiting or {@code flushIntervalMillis} has
+ * passed. When the buffer is full the producer flushes inline (backpressure). Handlers must call
+ * {@link #flush()} before returning, since a frozen Lambda container never runs the flusher.
+ *
+ * <p>A batch whose insert failed is retried row by row. A row the database rejects on its own
+ * (bad data, a constraint) is logged and dropped, see {@link #getDroppedCount()}, so it can't
+ * hold up the rows behind it. When the database itself is unavailable the remaining rows are
+ * kept aside and retried before anything else is drained; while that lasts, a full buffer makes
+ * {@link #append} fail.
+ */
+public class WebhookAuditLogWriter {
+  private static final StructuredLogger log =
+      StructuredLogger.getLogger(WebhookAuditLogWriter.class);
+
+  private final DeliveryRepository dbService;
+  private final BlockingQueue<WebhookDeliveryAuditLog> buffer;
+  private final int batchSize;
+  private final long flushIntervalNanos;
+  private final ReentrantLock flushLock = new ReentrantLock();
+  // Rows not written because the database was unavailable, guarded by flushLock
+  private final List<WebhookDeliveryAuditLog> failed = new ArrayList<>();
+  private final AtomicLong droppedCount = new AtomicLong();
+  private volatile Thread flusher;
+
+  public WebhookAuditLogWriter(DeliveryRepository dbService) {
+    this.dbService = dbService;
+    this.buffer = new ArrayBlockingQueue<>(Integer.parseInt(
+        System.getenv("AUDIT_BUFFER_CAPACITY") != null
+            ? System.getenv("AUDIT_BUFFER_CAPACITY")
+            : "1000"));
+    this.batchSize = Integer.parseInt(System.getenv("AUDIT_FLUSH_BATCH_SIZE") != null
+        ? System.getenv("AUDIT_FLUSH_BATCH_SIZE")
+        : "100");
+    this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Long.parseLong(
+        System.getenv("AUDIT_FLUSH_INTERVAL_MS") != null
+            ? System.getenv("AUDIT_FLUSH_INTERVAL_MS")
+            : "1000"));
+  }
+
+  public void append(WebhookDeliveryAuditLog auditLog) throws SQLException {
+    startFlusher();
+    while (!buffer.offer(auditLog)) {
+      // Buffer full: the producer pays for the flush
+      flush();
+    }
+    if (buffer.size() >= batchSize) {
+      LockSupport.unpark(flusher);
+    }
+  }
+
+  /**
+   * Writes every buffered row, starting with the rows kept from a previous flush. If the database
+   * is unavailable the rows not written yet are kept for the next flush and the error is rethrown.
+   */
+  public void flush() throws SQLException {
+    flushLock.lock();
+    try {
+      if (!failed.isEmpty()) {
+        List<WebhookDeliveryAuditLog> retry = new ArrayList<>(failed);
+        failed.clear();
+        insert(retry);
+      }
+      List<WebhookDeliveryAuditLog> batch = new ArrayList<>(batchSize);
+      while (buffer.drainTo(batch, batchSize) > 0) {
+        insert(batch);
+        batch.clear();
+      }
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /** Inserts one batch, falling back to one row at a time if the batch is rejected. */
+  private void insert(List<WebhookDeliveryAuditLog> batch) throws SQLException {
+    try {
+      dbService.insertWebhookDeliveryLogs(batch);
+      return;
+    } catch (SQLException e) {
+      if (isUnavailable(e)) {
+        failed.addAll(batch);
+        throw e;
+      }
+    }
+    for (int i = 0; i < batch.size(); i++) {
+      WebhookDeliveryAuditLog auditLog = batch.get(i);
+      try {
+        dbService.insertWebhookDeliveryLogs(List.of(auditLog));
+      } catch (SQLException e) {
+        if (isUnavailable(e)) {
+          failed.addAll(batch.subList(i, batch.size()));
+          throw e;
+        }
+        droppedCount.incrementAndGet();
+        log.error("audit.dropped").with("deliveryId", auditLog.getDeliveryId())
+            .with("attempt", auditLog.getAttemptNumber()).with("status", auditLog.getStatus())
+            .with("error", e.getMessage()).log("Dropping audit row the database rejected");
+      }
+    }
+  }
+
+  /**
+   * Connection failures, rollbacks, resource exhaustion and shutdowns (SQLSTATE classes 08, 40,
+   * 53, 57): the rows themselves are fine and are worth retrying later.
+   */
+  private static boolean isUnavailable(SQLException e) {
+    String state = e.getSQLState();
+    return e instanceof SQLTransientException || e instanceof SQLRecoverableException
+        || state == null || state.startsWith("08") || state.startsWith("40")
+        || state.startsWith("53") || state.startsWith("57");
+  }
+
+  /** Number of rows not written yet. */
+  public int size() {
+    flushLock.lock();
+    try {
+      return buffer.size() + failed.size();
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  /** Rows dropped since the writer was created because the database rejected them. */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  private void startFlusher() {
+    if (flusher != null) {
+      return;
+    }
+    synchronized (this) {
+      if (flusher == null) {
+        flusher = Thread.ofVirtual().name("audit-log-flusher").start(this::runFlusher);
+      }
+    }
+  }
+
+  private void runFlusher() {
+    while (!Thread.currentThread().isInterrupted()) {
+      LockSupport.parkNanos(flushIntervalNanos);
+      if (!buffer.isEmpty()) {
+        try {
+          flush();
+        } catch (SQLException e) {
+          // Rows stay buffered; the next flush (at the latest the handler's own) retries them
+        }
+      }
+    }
+  }
+}
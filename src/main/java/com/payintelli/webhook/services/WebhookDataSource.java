@@ -0,0 +1,87 @@
+package com.payintelli.webhook.services;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import org.crac.Core;
+import org.crac.Resource;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Lazily created Hikari pool shared by every invocation of a warm container. The pool is closed
+ * before a SnapStart checkpoint and rebuilt on first use after restore, so a restored snapshot
+ * never hands out sockets that were opened before the snapshot was taken.
+ */
+public class WebhookDataSource implements Resource {
+  private final String dbUrl;
+  private final String dbUsername;
+  private final String dbPassword;
+  private final int maxPoolSize;
+  private volatile HikariDataSource dataSource;
+
+  public WebhookDataSource(String dbUrl, String dbUsername, String dbPassword) {
+    this.dbUrl = dbUrl;
+    this.dbUsername = dbUsername;
+    this.dbPassword = dbPassword;
+    this.maxPoolSize = Integer.parseInt(
+        System.getenv("DB_POOL_MAX_SIZE") != null ? System.getenv("DB_POOL_MAX_SIZE") : "2");
+
+    Core.getGlobalContext().register(this);
+  }
+
+  public Connection getConnection() throws SQLException {
+    HikariDataSource ds = dataSource;
+    if (ds == null) {
+      synchronized (this) {
+        ds = dataSource;
+        if (ds == null) {
+          ds = createDataSource();
+          dataSource = ds;
+        }
+      }
+    }
+    return ds.getConnection();
+  }
+
+  public synchronized void close() {
+    if (dataSource != null) {
+      dataSource.close();
+      dataSource = null;
+    }
+  }
+
+  @Override
+  public void beforeCheckpoint(org.crac.Context<? extends Resource> context) {
+    close();
+  }
+
+  @Override
+  public void afterRestore(org.crac.Context<? extends Resource> context) {
+    // Nothing to do: the pool is rebuilt with fresh connections on the next getConnection()
+  }
+
+  private HikariDataSource createDataSource() {
+    HikariConfig config = new HikariConfig();
+    config.setPoolName("webhook-db");
+    config.setJdbcUrl(dbUrl);
+    config.setUsername(dbUsername);
+    config.setPassword(dbPassword);
+
+    // A Lambda container serves one invocation at a time, so the pool only needs to cover the
+    // parallelism inside a single invocation. Total DB connections = concurrency * pool size.
+    config.setMaximumPoolSize(maxPoolSize);
+    config.setMinimumIdle(1);
+    config.setConnectionTimeout(5000);
+    config.setIdleTimeout(120000);
+    config.setMaxLifetime(300000);
+    config.setInitializationFailTimeout(-1);
+
+    // Server-side prepared statements, cached per physical connection
+    config.addDataSourceProperty("prepareThreshold", "1");
+    config.addDataSourceProperty("preparedStatementCacheQueries", "256");
+    config.addDataSourceProperty("preparedStatementCacheSizeMiB", "5");
+    config.addDataSourceProperty("tcpKeepAlive", "true");
+
+    return new HikariDataSource(config);
+  }
+}
@@ -1,103 +1,448 @@
 package com.payintelli.webhook.services;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import com.payintelli.webhook.models.WebhookDelivery;
+import com.payintelli.webhook.models.WebhookDeliveryAuditLog;
+import com.payintelli.webhook.models.WebhookDeliveryMessage;
+import com.payintelli.webhook.models.WebhookResponseBody;
+import com.payintelli.webhook.utils.JsonTextUtils;
 
-public class WebhookDatabaseService {
-  private final String dbUrl;
-  private final String dbUsername;
-  private final String dbPassword;
+public class WebhookDatabaseService implements DeliveryRepository {
+  // How far a due retry the queue refused is pushed back, behind the retries due meanwhile
+  private static final int REJECTED_RETRY_BACKOFF_SECONDS = 300;
+
+  private final WebhookDataSource dataSource;
+  private final AuditLogPartitionManager partitionManager;
 
   public WebhookDatabaseService(String dbUrl, String dbUsername, String dbPassword) {
-    this.dbUrl = dbUrl;
-    this.dbUsername = dbUsername;
-    this.dbPassword = dbPassword;
+    this.dataSource = new WebhookDataSource(dbUrl, dbUsername, dbPassword);
+    this.partitionManager = new AuditLogPartitionManager(dataSource);
   }
 
-  public Long createWebhookDelivery(WebhookDelivery delivery) throws SQLException {
-    String sql =
-        "INSERT INTO webhook_deliveries (webhook_endpoint_id, event_type, payload, attempt_count, status) "
-            + "VALUES (?, ?, ?, ?, ?) RETURNING id";
+  public AuditLogPartitionManager getPartitionManager() {
+    return partitionManager;
+  }
+
+  /**
+   * Inserts all deliveries and their initial audit rows in one transaction using JDBC batches,
+   * returning the delivery ids in the same order as {@code deliveries}. Deliveries with a payload
+   * hash store their payload once in webhook_payloads and only reference it.
+   *
+   * <p>Deliveries with an event id are idempotent per (event id, endpoint): for a pair that
+   * already exists the existing row is returned, its enqueuedAt is set on the delivery, and no
+   * second audit row is written.
+   */
+  @Override
+  public List<Long> createWebhookDeliveries(List<WebhookDelivery> deliveries) throws SQLException {
+    if (deliveries.isEmpty()) {
+      return List.of();
+    }
+
+    // Reusing a stored payload bumps referenced_at (and locks the row until commit), so
+    // deleteUnreferencedPayloads can't remove it before the new delivery is visible
+    String payloadSql = "INSERT INTO webhook_payloads (hash, payload) VALUES (?, ?) "
+        + "ON CONFLICT (hash) DO UPDATE SET referenced_at = EXCLUDED.referenced_at";
+
+    // The no-op update makes RETURNING yield the existing row; xmax = 0 only for fresh inserts
+    String deliverySql = "INSERT INTO webhook_deliveries "
+        + "(event_id, webhook_endpoint_id, event_type, payload, payload_hash, attempt_count, "
+        + "status) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?) "
+        + "ON CONFLICT (event_id, webhook_endpoint_id) DO UPDATE SET event_id = EXCLUDED.event_id "
+        + "RETURNING id, enqueued_at, (xmax = 0) AS inserted";
+
+    String logSql = "INSERT INTO webhook_delivery_audit_logs "
+        + "(delivery_id, attempt_number, request_body, payload_hash, logged_at, status) "
+        + "VALUES (?, ?, ?, ?, CURRENT_TIMESTAMP, ?)";
+
+    try (Connection conn = dataSource.getConnection()) {
+      conn.setAutoCommit(false);
+
+      try (PreparedStatement payloadStmt = conn.prepareStatement(payloadSql);
+          PreparedStatement deliveryStmt =
+              conn.prepareStatement(deliverySql, Statement.RETURN_GENERATED_KEYS);
+          PreparedStatement logStmt = conn.prepareStatement(logSql)) {
+
+        Map<String, String> payloads = new LinkedHashMap<>();
+        for (WebhookDelivery delivery : deliveries) {
+          if (delivery.getPayloadHash() != null) {
+            payloads.putIfAbsent(delivery.getPayloadHash(), delivery.getPayload());
+          }
+        }
+        if (!payloads.isEmpty()) {
+          for (Map.Entry<String, String> payload : payloads.entrySet()) {
+            payloadStmt.setString(1, payload.getKey());
+            payloadStmt.setString(2, payload.getValue());
+            payloadStmt.addBatch();
+          }
+          payloadStmt.executeBatch();
+        }
+
+        for (WebhookDelivery delivery : deliveries) {
+          deliveryStmt.setString(1, delivery.getEventId());
+          deliveryStmt.setLong(2, delivery.getWebhookEndpointId());
+          deliveryStmt.setString(3, delivery.getEventType());
+          deliveryStmt.setString(4, inlinePayload(delivery));
+          deliveryStmt.setString(5, delivery.getPayloadHash());
+          deliveryStmt.setInt(6, delivery.getAttemptCount());
+          deliveryStmt.setString(7, delivery.getStatus());
+          deliveryStmt.addBatch();
+        }
+        deliveryStmt.executeBatch();
+
+        List<Long> ids = new ArrayList<>(deliveries.size());
+        List<Timestamp> enqueuedAt = new ArrayList<>(deliveries.size());
+        List<Boolean> inserted = new ArrayList<>(deliveries.size());
+        try (ResultSet rs = deliveryStmt.getGeneratedKeys()) {
+          while (rs.next()) {
+            ids.add(rs.getLong("id"));
+            enqueuedAt.add(rs.getTimestamp("enqueued_at"));
+            inserted.add(rs.getBoolean("inserted"));
+          }
+        }
+        if (ids.size() != deliveries.size()) {
+          throw new SQLException("Failed to insert deliveries: expected " + deliveries.size()
+              + " ids, got " + ids.size());
+        }
+
+        boolean anyInserted = false;
+        for (int i = 0; i < deliveries.size(); i++) {
+          WebhookDelivery delivery = deliveries.get(i);
+          delivery.setId(ids.get(i));
+          delivery.setEnqueuedAt(enqueuedAt.get(i));
+          if (!inserted.get(i)) {
+            continue;
+          }
+          anyInserted = true;
+          logStmt.setLong(1, ids.get(i));
+          logStmt.setInt(2, delivery.getAttemptCount());
+          logStmt.setString(3, inlinePayload(delivery));
+          logStmt.setString(4, delivery.getPayloadHash());
+          logStmt.setString(5, delivery.getStatus());
+          logStmt.addBatch();
+        }
+        if (anyInserted) {
+          logStmt.executeBatch();
+        }
+
+        conn.commit();
+        return ids;
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+    }
+  }
+
+  /** Marks deliveries whose SQS message was sent, so a redelivered event doesn't resend them. */
+  @Override
+  public void markDeliveriesEnqueued(List<Long> deliveryIds) throws SQLException {
+    if (deliveryIds.isEmpty()) {
+      return;
+    }
+    String sql = "UPDATE webhook_deliveries SET enqueued_at = now() WHERE id = ANY (?)";
+    try (Connection conn = dataSource.getConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      stmt.setArray(1, conn.createArrayOf("bigint", deliveryIds.toArray()));
+      stmt.executeUpdate();
+    }
+  }
+
+  /** The subset of {@code deliveryIds} already marked DELIVERED. */
+  @Override
+  public Set<Long> findDeliveredIds(List<Long> deliveryIds) throws SQLException {
+    if (deliveryIds.isEmpty()) {
+      return Set.of();
+    }
+    String sql = "SELECT id FROM webhook_deliveries WHERE id = ANY (?) AND status = 'DELIVERED'";
+    try (Connection conn = dataSource.getConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      stmt.setArray(1, conn.createArrayOf("bigint", deliveryIds.toArray()));
+      Set<Long> delivered = new HashSet<>();
+      try (ResultSet rs = stmt.executeQuery()) {
+        while (rs.next()) {
+          delivered.add(rs.getLong(1));
+        }
+      }
+      return delivered;
+    }
+  }
+
+  private static String inlinePayload(WebhookDelivery delivery) {
+    return delivery.getPayloadHash() != null ? null : delivery.getPayload();
+  }
+
+  /**
+   * Deletes payloads last stored before {@code cutoff} that no delivery still in progress
+   * references, nor any delivery with audit rows logged since {@code cutoff}. Only run once the
+   * audit partitions before {@code cutoff} have been archived along with their payloads.
+   *
+   * @return the number of payloads deleted
+   */
+  public int deleteUnreferencedPayloads(Instant cutoff) throws SQLException {
+    String sql = "DELETE FROM webhook_payloads p WHERE p.referenced_at < ? "
+        + "AND NOT EXISTS (SELECT 1 FROM webhook_deliveries d WHERE d.payload_hash = p.hash "
+        + "AND (d.status NOT IN ('DELIVERED', 'ABANDONED') "
+        + "OR EXISTS (SELECT 1 FROM webhook_delivery_audit_logs a "
+        + "WHERE a.delivery_id = d.id AND a.logged_at >= ?)))";
 
-    try (Connection conn = DriverManager.getConnection(dbUrl, dbUsername, dbPassword);
+    try (Connection conn = dataSource.getConnection();
         PreparedStatement stmt = conn.prepareStatement(sql)) {
-      stmt.setLong(1, delivery.getWebhookEndpointId());
-      stmt.setString(2, delivery.getEventType());
-      stmt.setString(3, delivery.getPayload());
-      stmt.setInt(4, delivery.getAttemptCount());
-      stmt.setString(5, delivery.getStatus());
+      Timestamp at = Timestamp.from(cutoff);
+      stmt.setTimestamp(1, at);
+      stmt.setTimestamp(2, at);
+      return stmt.executeUpdate();
+    }
+  }
+
+  @Override
+  public String findPayload(String hash) throws SQLException {
+    String sql = "SELECT payload FROM webhook_payloads WHERE hash = ?";
+    try (Connection conn = dataSource.getConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      stmt.setString(1, hash);
+      try (ResultSet rs = stmt.executeQuery()) {
+        return rs.next() ? rs.getString(1) : null;
+      }
+    }
+  }
 
+  @Override
+  public Map<String, String> findPayloads(Collection<String> hashes) throws SQLException {
+    if (hashes.isEmpty()) {
+      return Map.of();
+    }
+    String sql = "SELECT hash, payload FROM webhook_payloads WHERE hash = ANY (?)";
+    try (Connection conn = dataSource.getConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      // bpchar like the char(64) key, so the lookup can use its index
+      stmt.setArray(1, conn.createArrayOf("bpchar", hashes.toArray()));
+      Map<String, String> payloads = new HashMap<>(hashes.size() * 2);
       try (ResultSet rs = stmt.executeQuery()) {
-        if (rs.next()) {
-          return rs.getLong(1);
+        while (rs.next()) {
+          payloads.put(rs.getString(1), rs.getString(2));
         }
-        throw new SQLException("Failed to insert delivery");
       }
+      return payloads;
     }
   }
 
-  public void insertWebhookDeliveryLog(Long deliveryId, int attempt, String requestBody)
+  /**
+   * Records the outcome of a delivery attempt on webhook_deliveries only; the matching audit row
+   * goes through {@link WebhookAuditLogWriter}. A delivery already marked DELIVERED is left as is.
+   */
+  @Override
+  public void updateDeliveryState(Long deliveryId, Integer responseStatus,
+      WebhookResponseBody response, String status, Timestamp nextRetryAt, Integer attemptCount)
       throws SQLException {
-    String sql = "INSERT INTO webhook_delivery_audit_logs "
-        + "(delivery_id, attempt_number, request_body, logged_at, status) "
-        + "VALUES (?, ?, ?, CURRENT_TIMESTAMP, ?)";
-    try (Connection conn = DriverManager.getConnection(dbUrl, dbUsername, dbPassword);
+    String sql =
+        "UPDATE webhook_deliveries SET response_status = ?, response_body = ?, status = ?, "
+            + "next_retry_at = ?, attempt_count = ?, delivered_at = ?, "
+            + "response_body_length = ?, response_body_truncated = ? "
+            + "WHERE id = ? AND status <> 'DELIVERED'";
+
+    try (Connection conn = dataSource.getConnection();
         PreparedStatement stmt = conn.prepareStatement(sql)) {
-      stmt.setLong(1, deliveryId);
-      stmt.setInt(2, attempt);
-      stmt.setString(3, requestBody);
-      stmt.setString(4, "PENDING");
+      stmt.setObject(1, responseStatus);
+      stmt.setString(2, response != null ? response.getBody() : null);
+      stmt.setString(3, status);
+      stmt.setTimestamp(4, nextRetryAt);
+      stmt.setInt(5, attemptCount);
+      stmt.setTimestamp(6,
+          "DELIVERED".equals(status) ? new Timestamp(System.currentTimeMillis()) : null);
+      stmt.setObject(7, response != null ? response.getLength() : null);
+      stmt.setBoolean(8, response != null && response.isTruncated());
+      stmt.setLong(9, deliveryId);
       stmt.executeUpdate();
     }
   }
 
-  public void updateDelivery(Long deliveryId, Integer responseStatus, String responseBody,
-      String status, Timestamp nextRetryAt, Integer attemptCount, String requestHeaders,
-      String requestBody, String responseHeaders) throws Exception {
+  /**
+   * Changes status and retry time without touching the stored response of the last attempt. A
+   * delivery already marked DELIVERED is left as is.
+   */
+  @Override
+  public void updateDeliveryStatus(Long deliveryId, String status, Timestamp nextRetryAt,
+      Integer attemptCount) throws SQLException {
+    String sql = "UPDATE webhook_deliveries SET status = ?, next_retry_at = ?, attempt_count = ? "
+        + "WHERE id = ? AND status <> 'DELIVERED'";
 
-    String updateSql =
-        "UPDATE webhook_deliveries SET response_status = ?, response_body = ?, status = ?, "
-            + "next_retry_at = ?, attempt_count = ?, delivered_at = ? WHERE id = ?";
+    try (Connection conn = dataSource.getConnection();
+        PreparedStatement stmt = conn.prepareStatement(sql)) {
+      stmt.setString(1, status);
+      stmt.setTimestamp(2, nextRetryAt);
+      stmt.setInt(3, attemptCount);
+      stmt.setLong(4, deliveryId);
+      stmt.executeUpdate();
+    }
+  }
 
-    String insertSql = "INSERT INTO webhook_delivery_audit_logs "
-        + "(delivery_id, attempt_number, request_headers, request_body, response_status, response_headers, response_body, logged_at, status) "
-        + "VALUES (?, ?, ?::jsonb, ?, ?, ?::jsonb, ?, CURRENT_TIMESTAMP, ?)";
+  /**
+   * Claims up to {@code limit} SCHEDULED deliveries whose next_retry_at has passed, hands them to
+   * {@code dispatcher} as their next attempt (payload left null when only its hash is stored) and
+   * marks the enqueued ones PENDING. Rows are locked with FOR UPDATE SKIP LOCKED, so concurrent
+   * sweepers never claim the same delivery. Rows the dispatcher didn't enqueue stay SCHEDULED
+   * with next_retry_at moved {@value #REJECTED_RETRY_BACKOFF_SECONDS}s ahead, so rows the queue
+   * keeps refusing don't fill every sweep ahead of newer due retries.
+   *
+   * @return the number of claimed rows
+   */
+  @Override
+  public int dispatchDueRetries(int limit, RetryDispatcher dispatcher) throws Exception {
+    String claimSql =
+        "SELECT id, webhook_endpoint_id, event_type, payload, payload_hash, attempt_count "
+        + "FROM webhook_deliveries WHERE status = 'SCHEDULED' AND next_retry_at <= now() "
+        + "ORDER BY next_retry_at LIMIT ? FOR UPDATE SKIP LOCKED";
+    String markSql = "UPDATE webhook_deliveries SET status = 'PENDING' WHERE id = ANY (?)";
+    String postponeSql = "UPDATE webhook_deliveries "
+        + "SET next_retry_at = now() + make_interval(secs => ?) WHERE id = ANY (?)";
 
-    try (Connection conn = DriverManager.getConnection(dbUrl, dbUsername, dbPassword)) {
+    try (Connection conn = dataSource.getConnection()) {
       conn.setAutoCommit(false);
 
-      try (PreparedStatement updateStmt = conn.prepareStatement(updateSql);
-          PreparedStatement insertStmt = conn.prepareStatement(insertSql)) {
-
-        updateStmt.setObject(1, responseStatus);
-        updateStmt.setString(2, responseBody);
-        updateStmt.setString(3, status);
-        updateStmt.setTimestamp(4, nextRetryAt);
-        updateStmt.setInt(5, attemptCount);
-        updateStmt.setTimestamp(6,
-            "DELIVERED".equals(status) ? new Timestamp(System.currentTimeMillis()) : null);
-        updateStmt.setLong(7, deliveryId);
-        updateStmt.executeUpdate();
-        insertStmt.setLong(1, deliveryId);
-        insertStmt.setInt(2, attemptCount);
-        insertStmt.setString(3, requestHeaders);
-        insertStmt.setString(4, requestBody);
-        insertStmt.setObject(5, responseStatus);
-        insertStmt.setString(6, responseHeaders);
-        insertStmt.setString(7, responseBody);
-        insertStmt.setString(8, status);
-        insertStmt.executeUpdate();
+      try {
+        List<WebhookDeliveryMessage> due = new ArrayList<>(limit);
+        try (PreparedStatement stmt = conn.prepareStatement(claimSql)) {
+          stmt.setInt(1, limit);
+          try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+              // Rows from before payloads were kept as raw JSON hold Map.toString() text, which
+              // the queue serializer would otherwise embed verbatim
+              WebhookDeliveryMessage message = new WebhookDeliveryMessage(rs.getLong("id"),
+                  rs.getLong("webhook_endpoint_id"), rs.getString("event_type"),
+                  JsonTextUtils.normalize(rs.getString("payload")),
+                  rs.getInt("attempt_count") + 1);
+              message.setPayloadHash(rs.getString("payload_hash"));
+              due.add(message);
+            }
+          }
+        }
+
+        if (!due.isEmpty()) {
+          List<Long> enqueued = dispatcher.dispatch(due);
+          if (!enqueued.isEmpty()) {
+            try (PreparedStatement stmt = conn.prepareStatement(markSql)) {
+              stmt.setArray(1, conn.createArrayOf("bigint", enqueued.toArray()));
+              stmt.executeUpdate();
+            }
+          }
+          Set<Long> accepted = new HashSet<>(enqueued);
+          List<Long> rejected = new ArrayList<>();
+          for (WebhookDeliveryMessage message : due) {
+            if (!accepted.contains(message.getDeliveryId())) {
+              rejected.add(message.getDeliveryId());
+            }
+          }
+          if (!rejected.isEmpty()) {
+            try (PreparedStatement stmt = conn.prepareStatement(postponeSql)) {
+              stmt.setInt(1, REJECTED_RETRY_BACKOFF_SECONDS);
+              stmt.setArray(2, conn.createArrayOf("bigint", rejected.toArray()));
+              stmt.executeUpdate();
+            }
+          }
+        }
 
         conn.commit();
+        return due.size();
       } catch (Exception ex) {
         conn.rollback();
         throw ex;
       }
     }
   }
+
+  /**
+   * Inserts audit rows straight into their time partitions (one JDBC batch per partition, one
+   * transaction). If a partition hasn't been created ahead of time it is created and the insert
+   * is retried once through the parent table, which also routes rows that belong to the legacy
+   * partition or precede the start of the partition holding the cutover.
+   */
+  @Override
+  public void insertWebhookDeliveryLogs(List<WebhookDeliveryAuditLog> logs) throws SQLException {
+    if (logs.isEmpty()) {
+      return;
+    }
+
+    Map<String, List<WebhookDeliveryAuditLog>> byPartition = new LinkedHashMap<>();
+    for (WebhookDeliveryAuditLog log : logs) {
+      byPartition.computeIfAbsent(partitionManager.partitionFor(log.getLoggedAt()),
+          k -> new ArrayList<>()).add(log);
+    }
+
+    try {
+      insertWebhookDeliveryLogs(byPartition);
+    } catch (SQLException e) {
+      if (!isMissingPartition(e)) {
+        throw e;
+      }
+      for (List<WebhookDeliveryAuditLog> partitionLogs : byPartition.values()) {
+        partitionManager.ensurePartition(partitionLogs.get(0).getLoggedAt());
+      }
+      insertWebhookDeliveryLogs(Map.of(AuditLogPartitionManager.PARENT_TABLE, logs));
+    }
+  }
+
+  private void insertWebhookDeliveryLogs(Map<String, List<WebhookDeliveryAuditLog>> byPartition)
+      throws SQLException {
+    try (Connection conn = dataSource.getConnection()) {
+      conn.setAutoCommit(false);
+
+      try {
+        for (Map.Entry<String, List<WebhookDeliveryAuditLog>> partition : byPartition.entrySet()) {
+          String sql = "INSERT INTO " + partition.getKey()
+              + " (delivery_id, attempt_number, request_headers, request_body, payload_hash, "
+              + "response_status, response_headers, response_body, response_body_length, "
+              + "response_body_truncated, logged_at, status) "
+              + "VALUES (?, ?, ?::jsonb, ?, ?, ?, ?::jsonb, ?, ?, ?, ?, ?)";
+
+          try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (WebhookDeliveryAuditLog log : partition.getValue()) {
+              stmt.setLong(1, log.getDeliveryId());
+              stmt.setInt(2, log.getAttemptNumber());
+              stmt.setString(3, log.getRequestHeaders());
+              stmt.setString(4, log.getRequestBody());
+              stmt.setString(5, log.getPayloadHash());
+              stmt.setObject(6, log.getResponseStatus());
+              stmt.setString(7, log.getResponseHeaders());
+              stmt.setString(8, log.getResponseBody());
+              stmt.setObject(9, log.getResponseBodyLength());
+              stmt.setBoolean(10, log.isResponseBodyTruncated());
+              stmt.setTimestamp(11, log.getLoggedAt());
+              stmt.setString(12, log.getStatus());
+              stmt.addBatch();
+            }
+            stmt.executeBatch();
+          }
+        }
+        conn.commit();
+      } catch (SQLException ex) {
+        conn.rollback();
+        throw ex;
+      }
+    }
+  }
+
+  private static boolean isMissingPartition(SQLException e) {
+    // 42P01: partition table doesn't exist, 23514: no partition of the parent accepts the row
+    for (SQLException current = e; current != null; current = current.getNextException()) {
+      if ("42P01".equals(current.getSQLState()) || "23514".equals(current.getSQLState())) {
+        return true;
+      }
+    }
+    return false;
+  }
 }
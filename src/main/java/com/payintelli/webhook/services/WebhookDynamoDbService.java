@@ -1,21 +1,45 @@
 package com.payintelli.webhook.services;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.payintelli.webhook.models.WebhookEndpoint;
+import org.crac.Core;
+import org.crac.Resource;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 import software.amazon.awssdk.services.dynamodb.model.GetItemRequest;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 
-public class WebhookDynamoDbService {
+public class WebhookDynamoDbService implements EndpointStore, Resource {
+
+  private static final Map<String, AttributeValue> ENDPOINTS_KEY =
+      Map.of("config_table", AttributeValue.builder().s("WEBHOOK_ENDPOINTS").build());
+  // Every endpoint's shared circuit is an open_until_<id> attribute of this one item, so a
+  // container reads all of them with a single GetItem
+  private static final Map<String, AttributeValue> CIRCUITS_KEY =
+      Map.of("config_table", AttributeValue.builder().s("WEBHOOK_CIRCUITS").build());
+  private static final String CIRCUIT_ATTRIBUTE_PREFIX = "open_until_";
+  private static final String PRIMING_ENDPOINTS = "[{\"id\":0,\"clientId\":\"priming\","
+      + "\"url\":\"https://localhost/\",\"events\":\"[\\\"priming.*\\\"]\",\"isActive\":true,"
+      + "\"retryPolicy\":{},\"createdAt\":\"2024-01-01T00:00:00Z\"}]";
 
   private final DynamoDbClient dynamoDb;
   private final String tableName;
   private final ObjectMapper objectMapper;
+  private final long cacheTtlNanos;
+  private final String versionAttribute;
+  private final long circuitRefreshNanos;
+  private final ReentrantLock refreshLock = new ReentrantLock();
+  private final ReentrantLock circuitRefreshLock = new ReentrantLock();
+  private volatile EndpointSnapshot snapshot;
+  private volatile CircuitSnapshot circuits;
 
   public WebhookDynamoDbService(String tableName) {
 
@@ -24,44 +48,234 @@ public class WebhookDynamoDbService {
     this.objectMapper = new ObjectMapper();
     this.objectMapper.registerModule(new JavaTimeModule());
     this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    this.cacheTtlNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(
+        System.getenv("ENDPOINT_CACHE_TTL_SECONDS") != null
+            ? System.getenv("ENDPOINT_CACHE_TTL_SECONDS")
+            : "60"));
+    this.versionAttribute = System.getenv("ENDPOINT_CACHE_VERSION_ATTRIBUTE") != null
+        ? System.getenv("ENDPOINT_CACHE_VERSION_ATTRIBUTE")
+        : "cache_version";
+    this.circuitRefreshNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(
+        System.getenv("CIRCUIT_BREAKER_SHARED_REFRESH_SECONDS") != null
+            ? System.getenv("CIRCUIT_BREAKER_SHARED_REFRESH_SECONDS")
+            : "5"));
+
+    Core.getGlobalContext().register(this);
+  }
+
+  /** Parses and indexes a dummy endpoint list so the snapshot holds a warmed up mapper. */
+  @Override
+  public void beforeCheckpoint(org.crac.Context<? extends Resource> context) throws Exception {
+    List<WebhookEndpoint> endpoints =
+        objectMapper.readValue(PRIMING_ENDPOINTS, new TypeReference<List<WebhookEndpoint>>() {});
+    EndpointRoutingIndex.build(endpoints, objectMapper).find("priming", "priming.event");
+  }
+
+  /**
+   * Expires the cached endpoints and circuits: they may be arbitrarily old, and their nanoTime
+   * based expiry means nothing on the restored clock. Both are revalidated on first use.
+   */
+  @Override
+  public void afterRestore(org.crac.Context<? extends Resource> context) {
+    EndpointSnapshot current = snapshot;
+    if (current != null) {
+      snapshot = current.withExpiresAt(System.nanoTime());
+    }
+    circuits = null;
   }
 
 
+  @Override
   public List<WebhookEndpoint> findActiveEndpointsByEvent(String clientId, String eventType)
       throws Exception {
-    Map<String, AttributeValue> key =
-        Map.of("config_table", AttributeValue.builder().s("WEBHOOK_ENDPOINTS").build());
-    GetItemRequest request = GetItemRequest.builder().tableName(tableName).key(key).build();
-    Map<String, AttributeValue> item = dynamoDb.getItem(request).item();
-    List<WebhookEndpoint> endpoints = List.of();
-    if (item != null && item.containsKey("cache_value")) {
-      String dataJson = item.get("cache_value").s();
-      endpoints = objectMapper.readValue(dataJson, new TypeReference<List<WebhookEndpoint>>() {});
-      endpoints = endpoints.stream().filter(e -> e.getClientId().equals(clientId))
-          .filter(e -> e.getEvents().contains(eventType)).filter(WebhookEndpoint::getIsActive)
-          .toList();
-    }
-    return endpoints;
+    return getSnapshot().routing().find(clientId, eventType);
   }
 
 
+  @Override
   public WebhookEndpoint findEndpointById(Long endpointId) throws Exception {
-    Map<String, AttributeValue> key =
-        Map.of("config_table", AttributeValue.builder().s("WEBHOOK_ENDPOINTS").build());
+    return getSnapshot().byId().get(endpointId);
+  }
+
+  /** Served from the cached circuits item, see {@link #getCircuits()}. */
+  @Override
+  public long getCircuitOpenUntil(Long endpointId) {
+    return getCircuits().openUntil().getOrDefault(endpointId, 0L);
+  }
+
+  @Override
+  public void putCircuitOpenUntil(Long endpointId, long openUntilMillis) {
+    // A closed circuit's attribute is removed, so the item only holds open ones
+    UpdateItemRequest.Builder request = UpdateItemRequest.builder().tableName(tableName)
+        .key(CIRCUITS_KEY)
+        .expressionAttributeNames(Map.of("#e", CIRCUIT_ATTRIBUTE_PREFIX + endpointId));
+    if (openUntilMillis > 0) {
+      request.updateExpression("SET #e = :v").expressionAttributeValues(
+          Map.of(":v", AttributeValue.builder().n(Long.toString(openUntilMillis)).build()));
+    } else {
+      request.updateExpression("REMOVE #e");
+    }
+    dynamoDb.updateItem(request.build());
+  }
+
+  /**
+   * Returns the cached circuits, refreshing them once the interval has passed. As with the
+   * endpoints, one caller refreshes while the others keep the previous copy; until a first copy
+   * is loaded they see every circuit closed.
+   */
+  private CircuitSnapshot getCircuits() {
+    CircuitSnapshot current = circuits;
+    if (current != null && System.nanoTime() - current.expiresAt() < 0) {
+      return current;
+    }
+    if (!circuitRefreshLock.tryLock()) {
+      return current != null ? current : CircuitSnapshot.EMPTY;
+    }
+
+    try {
+      current = circuits;
+      if (current != null && System.nanoTime() - current.expiresAt() < 0) {
+        return current;
+      }
+      Map<Long, Long> openUntil;
+      try {
+        openUntil = loadCircuits();
+      } catch (Exception e) {
+        // Keep the last known circuits if DynamoDB is unavailable; retried after the interval
+        openUntil = current != null ? current.openUntil() : Map.of();
+      }
+      CircuitSnapshot refreshed =
+          new CircuitSnapshot(openUntil, System.nanoTime() + circuitRefreshNanos);
+      circuits = refreshed;
+      return refreshed;
+    } finally {
+      circuitRefreshLock.unlock();
+    }
+  }
+
+  private Map<Long, Long> loadCircuits() {
+    GetItemRequest request =
+        GetItemRequest.builder().tableName(tableName).key(CIRCUITS_KEY).build();
+    Map<String, AttributeValue> item = dynamoDb.getItem(request).item();
+    if (item == null) {
+      return Map.of();
+    }
 
-    GetItemRequest request = GetItemRequest.builder().tableName(tableName).key(key).build();
+    long now = System.currentTimeMillis();
+    Map<Long, Long> openUntil = new HashMap<>();
+    for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+      if (!attribute.getKey().startsWith(CIRCUIT_ATTRIBUTE_PREFIX)) {
+        continue;
+      }
+      long until = Long.parseLong(attribute.getValue().n());
+      if (until > now) {
+        openUntil.put(
+            Long.parseLong(attribute.getKey().substring(CIRCUIT_ATTRIBUTE_PREFIX.length())),
+            until);
+      }
+    }
+    return openUntil;
+  }
+
+  /**
+   * Returns the cached endpoint snapshot, refreshing it once the TTL has expired. Only one caller
+   * refreshes at a time; while a refresh is running, other callers keep using the previous
+   * snapshot and only block if nothing has been loaded yet.
+   */
+  private EndpointSnapshot getSnapshot() throws Exception {
+    EndpointSnapshot current = snapshot;
+    if (current != null && System.nanoTime() - current.expiresAt() < 0) {
+      return current;
+    }
+
+    if (current != null) {
+      if (!refreshLock.tryLock()) {
+        return current;
+      }
+    } else {
+      refreshLock.lock();
+    }
+
+    try {
+      current = snapshot;
+      if (current != null && System.nanoTime() - current.expiresAt() < 0) {
+        return current;
+      }
+      EndpointSnapshot refreshed = refresh(current);
+      snapshot = refreshed;
+      return refreshed;
+    } catch (Exception e) {
+      // Keep serving the last known endpoints if DynamoDB is unavailable
+      if (current != null) {
+        return current;
+      }
+      throw e;
+    } finally {
+      refreshLock.unlock();
+    }
+  }
+
+  private EndpointSnapshot refresh(EndpointSnapshot current) throws Exception {
+    long expiresAt = System.nanoTime() + cacheTtlNanos;
+
+    // Cheap version probe: only the version attribute is read, the endpoint list is not fetched
+    if (current != null && current.version() != null) {
+      GetItemRequest probe = GetItemRequest.builder().tableName(tableName).key(ENDPOINTS_KEY)
+          .projectionExpression("#v").expressionAttributeNames(Map.of("#v", versionAttribute))
+          .build();
+      Map<String, AttributeValue> item = dynamoDb.getItem(probe).item();
+      if (current.version().equals(versionOf(item))) {
+        return current.withExpiresAt(expiresAt);
+      }
+    }
 
+    GetItemRequest request =
+        GetItemRequest.builder().tableName(tableName).key(ENDPOINTS_KEY).build();
     Map<String, AttributeValue> item = dynamoDb.getItem(request).item();
 
-    if (item != null && item.containsKey("cache_value")) {
-      String dataJson = item.get("cache_value").s();
-      List<WebhookEndpoint> endpoints =
-          objectMapper.readValue(dataJson, new TypeReference<List<WebhookEndpoint>>() {});
+    if (item == null || !item.containsKey("cache_value")) {
+      return new EndpointSnapshot(null, null, EndpointRoutingIndex.build(List.of(), objectMapper),
+          Map.of(), expiresAt);
+    }
+
+    String version = versionOf(item);
+    String dataJson = item.get("cache_value").s();
+
+    // Same content under a new (or missing) version: keep the parsed endpoints
+    if (current != null && dataJson.equals(current.rawJson())) {
+      return new EndpointSnapshot(version, current.rawJson(), current.routing(), current.byId(),
+          expiresAt);
+    }
+
+    List<WebhookEndpoint> endpoints =
+        objectMapper.readValue(dataJson, new TypeReference<List<WebhookEndpoint>>() {});
+    Map<Long, WebhookEndpoint> byId = new HashMap<>(endpoints.size() * 2);
+    for (WebhookEndpoint endpoint : endpoints) {
+      byId.putIfAbsent(endpoint.getId(), endpoint);
+    }
+    return new EndpointSnapshot(version, dataJson,
+        EndpointRoutingIndex.build(endpoints, objectMapper), byId, expiresAt);
+  }
 
-      return endpoints.stream().filter(e -> e.getId().equals(endpointId)).findFirst().orElse(null);
+  private String versionOf(Map<String, AttributeValue> item) {
+    if (item == null || !item.containsKey(versionAttribute)) {
+      return null;
     }
+    AttributeValue value = item.get(versionAttribute);
+    return value.n() != null ? value.n() : value.s();
+  }
+
+  private record CircuitSnapshot(Map<Long, Long> openUntil, long expiresAt) {
+    private static final CircuitSnapshot EMPTY = new CircuitSnapshot(Map.of(), 0);
+  }
+
+  private record EndpointSnapshot(String version, String rawJson, EndpointRoutingIndex routing,
+      Map<Long, WebhookEndpoint> byId, long expiresAt) {
 
-    return null;
+    EndpointSnapshot withExpiresAt(long expiresAt) {
+      return new EndpointSnapshot(version, rawJson, routing, byId, expiresAt);
+    }
   }
 
 }
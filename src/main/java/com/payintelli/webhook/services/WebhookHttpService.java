@@ -1,39 +1,249 @@
 package com.payintelli.webhook.services;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.payintelli.webhook.models.WebhookEndpoint;
 import com.payintelli.webhook.models.WebhookDeliveryMessage;
-import com.payintelli.webhook.utils.WebhookSignatureUtils;
+import com.payintelli.webhook.models.WebhookResponseBody;
+import com.payintelli.webhook.utils.BoundedBodyHandler;
+import com.payintelli.webhook.utils.CountingSslContext;
+import com.payintelli.webhook.utils.WebhookSigner;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 
 public class WebhookHttpService {
+  private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+  private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
   private final HttpClient httpClient;
+  private final CountingSslContext sslContext;
+  private final int maxInFlightPerHost;
+  private final int compressionMinBytes;
+  private final BoundedBodyHandler bodyHandler;
+  private final WebhookSigner signer = new WebhookSigner();
+  private final JsonFactory jsonFactory = new JsonFactory();
+  private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder tlsRequests = new LongAdder();
 
   public WebhookHttpService() {
-    this.httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+    this.maxInFlightPerHost = Integer.parseInt(
+        System.getenv("HTTP_MAX_IN_FLIGHT_PER_HOST") != null
+            ? System.getenv("HTTP_MAX_IN_FLIGHT_PER_HOST")
+            : "10");
+    this.compressionMinBytes = Integer.parseInt(
+        System.getenv("REQUEST_COMPRESSION_MIN_BYTES") != null
+            ? System.getenv("REQUEST_COMPRESSION_MIN_BYTES")
+            : "1024");
+    this.bodyHandler = new BoundedBodyHandler(Integer.parseInt(
+        System.getenv("RESPONSE_BODY_MAX_BYTES") != null
+            ? System.getenv("RESPONSE_BODY_MAX_BYTES")
+            : "16384"));
+
+    // Idle connections are kept per host across invocations; must be set before the client exists
+    String keepAlive = System.getenv("HTTP_KEEPALIVE_SECONDS") != null
+        ? System.getenv("HTTP_KEEPALIVE_SECONDS")
+        : "120";
+    if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+      System.setProperty("jdk.httpclient.keepalive.timeout", keepAlive);
+    }
+    if (System.getProperty("jdk.httpclient.keepalive.timeout.h2") == null) {
+      System.setProperty("jdk.httpclient.keepalive.timeout.h2", keepAlive);
+    }
+
+    try {
+      this.sslContext = CountingSslContext.wrap(SSLContext.getDefault());
+    } catch (Exception e) {
+      throw new IllegalStateException("Unable to initialise TLS context", e);
+    }
+
+    HttpClient.Builder builder = HttpClient.newBuilder().connectTimeout(CONNECT_TIMEOUT)
+        .version(HttpClient.Version.HTTP_2).sslContext(sslContext);
+    if ("virtual".equalsIgnoreCase(System.getenv("HTTP_CLIENT_EXECUTOR"))) {
+      builder.executor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+    this.httpClient = builder.build();
   }
 
-  public HttpResponse<String> sendWebhook(WebhookEndpoint endpoint, WebhookDeliveryMessage message)
-      throws Exception {
-    HttpRequest.Builder requestBuilder = HttpRequest.newBuilder().uri(URI.create(endpoint.getUrl()))
-        .timeout(Duration.ofSeconds(30)).header("Content-Type", "application/json")
-        .header("User-Agent", "Payintelli Webhook-Delivery/1.0")
+  public HttpResponse<WebhookResponseBody> sendWebhook(WebhookEndpoint endpoint,
+      WebhookDeliveryMessage message) throws Exception {
+    // Encoded once: the same bytes are signed and sent
+    byte[] body = message.getPayload().getBytes(StandardCharsets.UTF_8);
+
+    HttpRequest.Builder requestBuilder = newRequest(endpoint, body)
         .header("X-Webhook-Event", message.getEventType())
-        .header("X-Webhook-Attempt", String.valueOf(message.getAttemptCount()))
-        .POST(HttpRequest.BodyPublishers.ofString(message.getPayload()));
+        .header("X-Webhook-Attempt", String.valueOf(message.getAttemptCount()));
+    return send(endpoint, requestBuilder, body);
+  }
+
+  /**
+   * Sends {@code messages} as one request whose body is a JSON array of
+   * {@code {"deliveryId", "eventType", "attempt", "data"}} objects, signed as a whole.
+   */
+  public HttpResponse<WebhookResponseBody> sendWebhookBatch(WebhookEndpoint endpoint,
+      List<WebhookDeliveryMessage> messages) throws Exception {
+    byte[] body = encodeBatch(messages);
+
+    int maxAttempt = 0;
+    for (WebhookDeliveryMessage message : messages) {
+      maxAttempt = Math.max(maxAttempt, message.getAttemptCount());
+    }
+
+    HttpRequest.Builder requestBuilder = newRequest(endpoint, body)
+        .header("X-Webhook-Event", "batch")
+        .header("X-Webhook-Batch-Size", String.valueOf(messages.size()))
+        .header("X-Webhook-Attempt", String.valueOf(maxAttempt));
+    return send(endpoint, requestBuilder, body);
+  }
+
+  /**
+   * Runs the parts of a delivery that are slow the first time so they are done before a SnapStart
+   * checkpoint: HMAC signing, gzip, a TLS ClientHello and the client's request path. The request
+   * goes to a closed local port, so no connection is left open in the snapshot.
+   */
+  public void prime() throws Exception {
+    byte[] body = "{\"priming\":true}".getBytes(StandardCharsets.UTF_8);
+    signer.sign(null, "priming", body);
+    signer.signTimestamped(null, "priming", 0, body);
+    gzip(body);
+
+    // The default context is the one wrapped by sslContext; using it directly keeps the
+    // handshake count at zero
+    SSLEngine engine = SSLContext.getDefault().createSSLEngine("localhost", 443);
+    engine.setUseClientMode(true);
+    engine.beginHandshake();
+    engine.wrap(ByteBuffer.allocate(0),
+        ByteBuffer.allocate(engine.getSession().getPacketBufferSize()));
+    engine.closeOutbound();
+
+    HttpRequest request = HttpRequest.newBuilder(URI.create("http://127.0.0.1:9/"))
+        .timeout(Duration.ofSeconds(1)).version(HttpClient.Version.HTTP_1_1)
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofByteArray(body)).build();
+    try {
+      httpClient.send(request, bodyHandler);
+    } catch (IOException e) {
+      // Expected, nothing listens there
+    }
+  }
+
+  private HttpRequest.Builder newRequest(WebhookEndpoint endpoint, byte[] body) {
+    return HttpRequest.newBuilder().uri(URI.create(endpoint.getUrl())).timeout(REQUEST_TIMEOUT)
+        .header("Content-Type", "application/json")
+        .header("User-Agent", "Payintelli Webhook-Delivery/1.0");
+  }
 
-    // Add signature header if secret is configured
+  private HttpResponse<WebhookResponseBody> send(WebhookEndpoint endpoint,
+      HttpRequest.Builder requestBuilder, byte[] body) throws Exception {
+    URI uri = URI.create(endpoint.getUrl());
+    boolean tls = "https".equalsIgnoreCase(uri.getScheme());
+
+    // HTTP/2 is negotiated through ALPN; don't attempt an h2c upgrade on plain HTTP
+    if (!tls) {
+      requestBuilder.version(HttpClient.Version.HTTP_1_1);
+    }
+
+    // Signature header if a secret is configured. It always covers the uncompressed JSON bytes,
+    // so receivers verify after decoding Content-Encoding.
     if (endpoint.getSecret() != null && !endpoint.getSecret().isEmpty()) {
-      String signature =
-          WebhookSignatureUtils.generateSignature(message.getPayload(), endpoint.getSecret());
-      requestBuilder.header("X-Webhook-Signature", "sha256=" + signature);
+      if (Boolean.TRUE.equals(endpoint.getTimestampedSignature())) {
+        long timestamp = System.currentTimeMillis() / 1000;
+        requestBuilder.header("X-Webhook-Timestamp", Long.toString(timestamp));
+        requestBuilder.header("X-Webhook-Signature",
+            signer.signTimestamped(endpoint.getId(), endpoint.getSecret(), timestamp, body));
+      } else {
+        requestBuilder.header("X-Webhook-Signature",
+            "sha256=" + signer.sign(endpoint.getId(), endpoint.getSecret(), body));
+      }
+    }
+
+    // Endpoints that opted in get bodies above the threshold gzip encoded
+    byte[] wireBody = body;
+    if ("gzip".equalsIgnoreCase(endpoint.getRequestEncoding())
+        && body.length >= compressionMinBytes) {
+      wireBody = gzip(body);
+      requestBuilder.header("Content-Encoding", "gzip");
+    }
+
+    HttpRequest request =
+        requestBuilder.POST(HttpRequest.BodyPublishers.ofByteArray(wireBody)).build();
+
+    Semaphore permits = hostPermits.computeIfAbsent(hostKey(uri),
+        k -> new Semaphore(maxInFlightPerHost));
+    if (!permits.tryAcquire(REQUEST_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+      throw new HostBusyException(hostKey(uri));
+    }
+    try {
+      requests.increment();
+      if (tls) {
+        tlsRequests.increment();
+      }
+      return httpClient.send(request, bodyHandler);
+    } finally {
+      permits.release();
+    }
+  }
+
+  private static byte[] gzip(byte[] body) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(body);
+    }
+    return out.toByteArray();
+  }
+
+  private byte[] encodeBatch(List<WebhookDeliveryMessage> messages) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (JsonGenerator gen = jsonFactory.createGenerator(out)) {
+      gen.writeStartArray();
+      for (WebhookDeliveryMessage message : messages) {
+        gen.writeStartObject();
+        gen.writeNumberField("deliveryId", message.getDeliveryId());
+        gen.writeStringField("eventType", message.getEventType());
+        gen.writeNumberField("attempt", message.getAttemptCount());
+        // Payloads are already JSON text
+        gen.writeFieldName("data");
+        gen.writeRawValue(message.getPayload());
+        gen.writeEndObject();
+      }
+      gen.writeEndArray();
     }
+    return out.toByteArray();
+  }
+
+  public long getRequestCount() {
+    return requests.sum();
+  }
+
+  /** Number of new TLS connections, i.e. full or resumed handshakes. */
+  public long getTlsHandshakeCount() {
+    return sslContext.getEngineCount();
+  }
+
+  /** HTTPS requests that were sent over an already established connection. */
+  public long getConnectionReuseCount() {
+    return Math.max(0, tlsRequests.sum() - sslContext.getEngineCount());
+  }
 
-    HttpRequest request = requestBuilder.build();
-    return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+  private static String hostKey(URI uri) {
+    return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
   }
 }
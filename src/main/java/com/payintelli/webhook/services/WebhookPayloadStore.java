@@ -0,0 +1,94 @@
+package com.payintelli.webhook.services;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read side of the content-addressed webhook_payloads table: payloads are looked up by hash
+ * through a small LRU cache, so the retries and claim checks of one fanned-out event hit the DB
+ * once per container.
+ */
+public class WebhookPayloadStore {
+
+  private final DeliveryRepository dbService;
+  private final Map<String, String> cache;
+
+  public WebhookPayloadStore(DeliveryRepository dbService) {
+    this.dbService = dbService;
+    int capacity = Integer.parseInt(System.getenv("PAYLOAD_CACHE_SIZE") != null
+        ? System.getenv("PAYLOAD_CACHE_SIZE")
+        : "256");
+    this.cache = new LinkedHashMap<>(capacity * 2, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /** Hex SHA-256 of the payload's UTF-8 bytes, the key in webhook_payloads. */
+  public static String hash(String payload) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-256");
+      return HexFormat.of().formatHex(digest.digest(payload.getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  /** The payload stored under {@code hash}, or {@code null} if there is none. */
+  public String get(String hash) throws SQLException {
+    synchronized (cache) {
+      String payload = cache.get(hash);
+      if (payload != null) {
+        return payload;
+      }
+    }
+
+    String payload = dbService.findPayload(hash);
+    if (payload != null) {
+      remember(hash, payload);
+    }
+    return payload;
+  }
+
+  /** Payloads of the {@code hashes} that are stored; cache misses are read in one query. */
+  public Map<String, String> getAll(Collection<String> hashes) throws SQLException {
+    Map<String, String> found = new HashMap<>(hashes.size() * 2);
+    List<String> missing = new ArrayList<>();
+    synchronized (cache) {
+      for (String hash : hashes) {
+        String payload = cache.get(hash);
+        if (payload != null) {
+          found.put(hash, payload);
+        } else {
+          missing.add(hash);
+        }
+      }
+    }
+
+    if (!missing.isEmpty()) {
+      Map<String, String> loaded = dbService.findPayloads(missing);
+      synchronized (cache) {
+        cache.putAll(loaded);
+      }
+      found.putAll(loaded);
+    }
+    return found;
+  }
+
+  public void remember(String hash, String payload) {
+    synchronized (cache) {
+      cache.put(hash, payload);
+    }
+  }
+}
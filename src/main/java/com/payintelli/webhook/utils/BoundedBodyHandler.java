@@ -0,0 +1,113 @@
+package com.payintelli.webhook.utils;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import com.payintelli.webhook.models.WebhookResponseBody;
+
+/**
+ * Keeps at most {@code maxBytes} of a response body. The rest of the stream is consumed and
+ * counted but never buffered, so a multi-megabyte error page costs {@code maxBytes} of heap. A
+ * UTF-8 body is cut before a character the limit would split.
+ */
+public class BoundedBodyHandler implements HttpResponse.BodyHandler<WebhookResponseBody> {
+  private final int maxBytes;
+
+  public BoundedBodyHandler(int maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  @Override
+  public HttpResponse.BodySubscriber<WebhookResponseBody> apply(HttpResponse.ResponseInfo info) {
+    return new BoundedSubscriber(maxBytes, charsetOf(info));
+  }
+
+  private static Charset charsetOf(HttpResponse.ResponseInfo info) {
+    String contentType = info.headers().firstValue("Content-Type").orElse("");
+    for (String param : contentType.split(";")) {
+      String trimmed = param.trim();
+      if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+        try {
+          return Charset.forName(trimmed.substring(8).replace("\"", "").trim());
+        } catch (Exception e) {
+          break;
+        }
+      }
+    }
+    return StandardCharsets.UTF_8;
+  }
+
+  private static final class BoundedSubscriber
+      implements HttpResponse.BodySubscriber<WebhookResponseBody> {
+    private final CompletableFuture<WebhookResponseBody> result = new CompletableFuture<>();
+    private final byte[] buffer;
+    private final Charset charset;
+    private int captured;
+    private long length;
+
+    BoundedSubscriber(int maxBytes, Charset charset) {
+      this.buffer = new byte[Math.max(0, maxBytes)];
+      this.charset = charset;
+    }
+
+    @Override
+    public CompletionStage<WebhookResponseBody> getBody() {
+      return result;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> items) {
+      for (ByteBuffer item : items) {
+        int remaining = item.remaining();
+        int copy = Math.min(remaining, buffer.length - captured);
+        if (copy > 0) {
+          item.get(buffer, captured, copy);
+          captured += copy;
+        }
+        length += remaining;
+      }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      result.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+      boolean truncated = length > captured;
+      String body = new String(buffer, 0, truncated ? charBoundary() : captured, charset);
+      result.complete(new WebhookResponseBody(body, length, truncated));
+    }
+
+    /**
+     * End of the captured bytes without a UTF-8 sequence the cut split, which would otherwise
+     * decode to a replacement character.
+     */
+    private int charBoundary() {
+      if (!StandardCharsets.UTF_8.equals(charset)) {
+        return captured;
+      }
+      int start = captured;
+      while (start > 0 && captured - start < 3 && (buffer[start - 1] & 0xC0) == 0x80) {
+        start--;
+      }
+      if (start == 0) {
+        return captured;
+      }
+      int lead = buffer[start - 1] & 0xFF;
+      int sequenceLength = lead >= 0xF0 ? 4 : lead >= 0xE0 ? 3 : lead >= 0xC0 ? 2 : 1;
+      return captured - (start - 1) < sequenceLength ? start - 1 : captured;
+    }
+  }
+}
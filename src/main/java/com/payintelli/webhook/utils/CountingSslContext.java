@@ -0,0 +1,93 @@
+package com.payintelli.webhook.utils;
+
+import java.security.KeyManagementException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.LongAdder;
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+
+/**
+ * SSLContext wrapper that counts engine creations. java.net.http.HttpClient creates one
+ * SSLEngine per new TLS connection, so the count is the number of TLS handshakes it performed.
+ */
+public final class CountingSslContext extends SSLContext {
+  private final LongAdder engines;
+
+  private CountingSslContext(SSLContext delegate, LongAdder engines) {
+    super(new Spi(delegate, engines), delegate.getProvider(), delegate.getProtocol());
+    this.engines = engines;
+  }
+
+  public static CountingSslContext wrap(SSLContext delegate) {
+    return new CountingSslContext(delegate, new LongAdder());
+  }
+
+  public long getEngineCount() {
+    return engines.sum();
+  }
+
+  private static final class Spi extends SSLContextSpi {
+    private final SSLContext delegate;
+    private final LongAdder engines;
+
+    Spi(SSLContext delegate, LongAdder engines) {
+      this.delegate = delegate;
+      this.engines = engines;
+    }
+
+    @Override
+    protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom sr)
+        throws KeyManagementException {
+      delegate.init(km, tm, sr);
+    }
+
+    @Override
+    protected SSLSocketFactory engineGetSocketFactory() {
+      return delegate.getSocketFactory();
+    }
+
+    @Override
+    protected SSLServerSocketFactory engineGetServerSocketFactory() {
+      return delegate.getServerSocketFactory();
+    }
+
+    @Override
+    protected SSLEngine engineCreateSSLEngine() {
+      engines.increment();
+      return delegate.createSSLEngine();
+    }
+
+    @Override
+    protected SSLEngine engineCreateSSLEngine(String host, int port) {
+      engines.increment();
+      return delegate.createSSLEngine(host, port);
+    }
+
+    @Override
+    protected SSLSessionContext engineGetServerSessionContext() {
+      return delegate.getServerSessionContext();
+    }
+
+    @Override
+    protected SSLSessionContext engineGetClientSessionContext() {
+      return delegate.getClientSessionContext();
+    }
+
+    @Override
+    protected SSLParameters engineGetDefaultSSLParameters() {
+      return delegate.getDefaultSSLParameters();
+    }
+
+    @Override
+    protected SSLParameters engineGetSupportedSSLParameters() {
+      return delegate.getSupportedSSLParameters();
+    }
+  }
+}
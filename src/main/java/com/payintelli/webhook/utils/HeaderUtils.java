@@ -0,0 +1,48 @@
+package com.payintelli.webhook.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class HeaderUtils {
+
+  /**
+   * Copies at most {@code maxHeaders} header names, for each at most {@code maxValuesPerHeader}
+   * values and at most {@code maxValueChars} characters per value, so a hostile receiver can't
+   * blow up the jsonb header columns.
+   */
+  public static Map<String, List<String>> capHeaders(Map<String, List<String>> headers,
+      int maxHeaders, int maxValuesPerHeader, int maxValueChars) {
+    Map<String, List<String>> capped = new LinkedHashMap<>();
+    for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+      if (capped.size() >= maxHeaders) {
+        break;
+      }
+      List<String> values = new ArrayList<>(header.getValue().size());
+      for (String value : header.getValue()) {
+        if (values.size() >= maxValuesPerHeader) {
+          break;
+        }
+        values.add(truncate(value, maxValueChars));
+      }
+      capped.put(header.getKey(), values);
+    }
+    return capped;
+  }
+
+  /**
+   * The first {@code maxChars} chars of {@code value}, one less if the cut would split a
+   * surrogate pair: a lone surrogate can't be stored in jsonb.
+   */
+  public static String truncate(String value, int maxChars) {
+    if (value.length() <= maxChars) {
+      return value;
+    }
+    int end = Math.max(0, maxChars);
+    if (end > 0 && Character.isHighSurrogate(value.charAt(end - 1))) {
+      end--;
+    }
+    return value.substring(0, end);
+  }
+}
@@ -0,0 +1,209 @@
+package com.payintelli.webhook.utils;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.HistogramIterationValue;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Per-invocation metrics of a handler: stage latencies and value distributions go into
+ * HdrHistogram recorders, counters into LongAdders, so recording is lock free from any thread.
+ * {@link #flush} turns everything recorded since the previous flush into one CloudWatch embedded
+ * metric format line.
+ *
+ * <p>A distribution is emitted as EMF {@code {"Values": [...], "Counts": [...]}} from the
+ * histogram's buckets, so CloudWatch's SampleCount and Sum stay exact. EMF takes at most 100
+ * values per metric; beyond that, neighbouring buckets are merged into their count-weighted mean.
+ */
+public class InvocationMetrics {
+  private static final long HIGHEST_TRACKABLE_VALUE = TimeUnit.HOURS.toMicros(1);
+  private static final int SIGNIFICANT_DIGITS = 2;
+  private static final int MAX_EMF_VALUES = 100;
+
+  private final String namespace;
+  private final String service;
+  private final JsonFactory jsonFactory = new JsonFactory();
+  private final Map<String, Distribution> distributions = new ConcurrentHashMap<>();
+  private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+  /** @param service value of the Service dimension, e.g. {@code "delivery"} */
+  public InvocationMetrics(String service) {
+    this.namespace = System.getenv("METRICS_NAMESPACE") != null
+        ? System.getenv("METRICS_NAMESPACE")
+        : "Payintelli/Webhook";
+    this.service = service;
+  }
+
+  /** Start time to pass to {@link #recordLatency}. */
+  public long startTimer() {
+    return System.nanoTime();
+  }
+
+  /** Records the time since {@code startNanos} as a sample of the {@code stage} latency. */
+  public void recordLatency(String stage, long startNanos) {
+    distribution(stage, "Milliseconds")
+        .record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+  }
+
+  /** Records {@code value} as a sample of a count distribution such as fan-out width. */
+  public void recordValue(String name, long value) {
+    distribution(name, "Count").record(value);
+  }
+
+  public void increment(String counter) {
+    add(counter, 1);
+  }
+
+  public void add(String counter, long delta) {
+    counters.computeIfAbsent(counter, k -> new LongAdder()).add(delta);
+  }
+
+  /** Counts a response as Status2xx ... Status5xx. */
+  public void recordStatus(int statusCode) {
+    increment("Status" + Math.max(1, Math.min(5, statusCode / 100)) + "xx");
+  }
+
+  /**
+   * Returns everything recorded since the last flush as an EMF JSON line and resets the counts,
+   * or {@code null} if nothing was recorded.
+   */
+  public String flush(String functionName) {
+    Map<String, Object> values = new TreeMap<>();
+    Map<String, String> units = new TreeMap<>();
+    distributions.forEach((name, distribution) -> {
+      Buckets buckets = distribution.drain();
+      if (buckets.counts().length > 0) {
+        values.put(name, buckets);
+        units.put(name, distribution.unit);
+      }
+    });
+    counters.forEach((name, counter) -> {
+      long sum = counter.sumThenReset();
+      if (sum != 0) {
+        values.put(name, sum);
+        units.put(name, "Count");
+      }
+    });
+    if (values.isEmpty()) {
+      return null;
+    }
+
+    StringWriter out = new StringWriter(256 + values.size() * 64);
+    try (JsonGenerator gen = jsonFactory.createGenerator(out)) {
+      gen.writeStartObject();
+      gen.writeObjectFieldStart("_aws");
+      gen.writeNumberField("Timestamp", System.currentTimeMillis());
+      gen.writeArrayFieldStart("CloudWatchMetrics");
+      gen.writeStartObject();
+      gen.writeStringField("Namespace", namespace);
+      gen.writeArrayFieldStart("Dimensions");
+      gen.writeStartArray();
+      gen.writeString("Service");
+      gen.writeEndArray();
+      gen.writeEndArray();
+      gen.writeArrayFieldStart("Metrics");
+      for (Map.Entry<String, String> unit : units.entrySet()) {
+        gen.writeStartObject();
+        gen.writeStringField("Name", unit.getKey());
+        gen.writeStringField("Unit", unit.getValue());
+        gen.writeEndObject();
+      }
+      gen.writeEndArray();
+      gen.writeEndObject();
+      gen.writeEndArray();
+      gen.writeEndObject();
+
+      gen.writeStringField("Service", service);
+      if (functionName != null) {
+        gen.writeStringField("FunctionName", functionName);
+      }
+      for (Map.Entry<String, Object> value : values.entrySet()) {
+        gen.writeFieldName(value.getKey());
+        if (value.getValue() instanceof Buckets buckets) {
+          // Latencies are recorded in microseconds
+          double scale = "Milliseconds".equals(units.get(value.getKey())) ? 1000.0 : 1.0;
+          gen.writeStartObject();
+          gen.writeArrayFieldStart("Values");
+          for (double bucketValue : buckets.values()) {
+            gen.writeNumber(bucketValue / scale);
+          }
+          gen.writeEndArray();
+          gen.writeArrayFieldStart("Counts");
+          for (long count : buckets.counts()) {
+            gen.writeNumber(count);
+          }
+          gen.writeEndArray();
+          gen.writeEndObject();
+        } else {
+          gen.writeNumber((Long) value.getValue());
+        }
+      }
+      gen.writeEndObject();
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to write metrics", e);
+    }
+    return out.toString();
+  }
+
+  private Distribution distribution(String name, String unit) {
+    Distribution distribution = distributions.get(name);
+    return distribution != null ? distribution
+        : distributions.computeIfAbsent(name, k -> new Distribution(unit));
+  }
+
+  /** Distinct values of a distribution and how often each occurred. */
+  private record Buckets(double[] values, long[] counts) {
+  }
+
+  private static final class Distribution {
+    private final String unit;
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE_VALUE, SIGNIFICANT_DIGITS);
+    private Histogram interval;
+
+    Distribution(String unit) {
+      this.unit = unit;
+    }
+
+    void record(long value) {
+      recorder.recordValue(Math.max(0, Math.min(value, HIGHEST_TRACKABLE_VALUE)));
+    }
+
+    /**
+     * Buckets recorded since the last drain, at most 100: consecutive buckets are merged into
+     * groups of equal size when there are more.
+     */
+    synchronized Buckets drain() {
+      interval = recorder.getIntervalHistogram(interval);
+      List<long[]> recorded = new ArrayList<>();
+      for (HistogramIterationValue bucket : interval.recordedValues()) {
+        recorded.add(new long[] {interval.medianEquivalentValue(bucket.getValueIteratedTo()),
+            bucket.getCountAddedInThisIterationStep()});
+      }
+
+      int groupSize = (recorded.size() + MAX_EMF_VALUES - 1) / MAX_EMF_VALUES;
+      int n = groupSize == 0 ? 0 : (recorded.size() + groupSize - 1) / groupSize;
+      double[] values = new double[n];
+      long[] counts = new long[n];
+      for (int k = 0; k < n; k++) {
+        double sum = 0;
+        for (long[] bucket : recorded.subList(k * groupSize,
+            Math.min(recorded.size(), (k + 1) * groupSize))) {
+          sum += (double) bucket[0] * bucket[1];
+          counts[k] += bucket[1];
+        }
+        values[k] = sum / counts[k];
+      }
+      return new Buckets(values, counts);
+    }
+  }
+}
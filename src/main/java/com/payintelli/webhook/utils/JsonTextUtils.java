@@ -0,0 +1,39 @@
+package com.payintelli.webhook.utils;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+public class JsonTextUtils {
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  /**
+   * Returns {@code text} unchanged if it is a JSON object or array, otherwise the text encoded
+   * as a JSON string. Used for payloads written before they were kept as raw JSON (e.g. the
+   * Map.toString() form), so they can still be embedded verbatim in a JSON document.
+   */
+  public static String normalize(String text) {
+    if (text == null) {
+      return null;
+    }
+    return isJsonStructure(text) ? text : quote(text);
+  }
+
+  public static boolean isJsonStructure(String text) {
+    try (JsonParser parser = JSON_FACTORY.createParser(text)) {
+      JsonToken first = parser.nextToken();
+      if (first != JsonToken.START_OBJECT && first != JsonToken.START_ARRAY) {
+        return false;
+      }
+      parser.skipChildren();
+      return parser.nextToken() == null;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  public static String quote(String text) {
+    return "\"" + new String(JsonStringEncoder.getInstance().quoteAsString(text)) + "\"";
+  }
+}
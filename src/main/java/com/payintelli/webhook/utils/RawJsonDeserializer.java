@@ -0,0 +1,39 @@
+package com.payintelli.webhook.utils;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+/**
+ * Reads a JSON value into its JSON text by streaming the tokens straight into a generator, so
+ * no Map/JsonNode tree is built and numbers keep their exact textual form. Older messages that
+ * carried the payload as an escaped string are unwrapped when that string holds JSON.
+ */
+public class RawJsonDeserializer extends JsonDeserializer<String> {
+
+  @Override
+  public String deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+    if (p.currentToken() == JsonToken.VALUE_STRING) {
+      return JsonTextUtils.normalize(p.getText());
+    }
+
+    StringWriter out = new StringWriter();
+    try (JsonGenerator generator = p.getCodec().getFactory().createGenerator(out)) {
+      int depth = 0;
+      do {
+        JsonToken token = p.currentToken();
+        generator.copyCurrentEventExact(p);
+        if (token.isStructStart()) {
+          depth++;
+        } else if (token.isStructEnd()) {
+          depth--;
+        }
+      } while (depth > 0 && p.nextToken() != null);
+    }
+    return out.toString();
+  }
+}
@@ -0,0 +1,19 @@
+package com.payintelli.webhook.utils;
+
+import java.io.IOException;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * Writes a value that already holds JSON text (see RawJsonDeserializer) verbatim instead of
+ * escaping it into a JSON string.
+ */
+public class RawJsonSerializer extends JsonSerializer<String> {
+
+  @Override
+  public void serialize(String value, JsonGenerator gen, SerializerProvider serializers)
+      throws IOException {
+    gen.writeRawValue(value);
+  }
+}
@@ -0,0 +1,165 @@
+package com.payintelli.webhook.utils;
+
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import com.payintelli.webhook.models.RetryPolicyConfig;
+import com.payintelli.webhook.models.WebhookEndpoint;
+
+/**
+ * Decides when (and whether) a failed delivery is retried. The curve is either an explicit list
+ * of delays or {@code base * multiplier^(attempt - 1)}, capped at {@code maxDelaySeconds}.
+ * Jitter spreads retries of deliveries that failed together:
+ * <ul>
+ * <li>none: the curve as is</li>
+ * <li>full: uniformly random between 1 second and the curve value</li>
+ * <li>decorrelated: random between the first delay and three times the previous delay</li>
+ * </ul>
+ * An unknown jitter name is logged and ignored: the broader policy's jitter applies.
+ */
+public final class RetryPolicy {
+  private static final StructuredLogger log = StructuredLogger.getLogger(RetryPolicy.class);
+
+  public enum Jitter {
+    NONE, FULL, DECORRELATED
+  }
+
+  // Not ThreadLocalRandom: its seed generator is part of a SnapStart snapshot, so every container
+  // restored from one would draw the same jitter. This one is reseeded after restore.
+  private static final Random JITTER_RANDOM = new Random();
+
+  private final Jitter jitter;
+  private final int[] delaysSeconds;
+  private final int baseDelaySeconds;
+  private final double multiplier;
+  private final int maxDelaySeconds;
+  private final int maxAttempts;
+
+  private RetryPolicy(Jitter jitter, int[] delaysSeconds, int baseDelaySeconds, double multiplier,
+      int maxDelaySeconds, int maxAttempts) {
+    this.jitter = jitter;
+    this.delaysSeconds = delaysSeconds;
+    this.baseDelaySeconds = baseDelaySeconds;
+    this.multiplier = multiplier;
+    this.maxDelaySeconds = maxDelaySeconds;
+    this.maxAttempts = maxAttempts;
+  }
+
+  /** Gives the jitter a fresh seed; called when a container is restored from a snapshot. */
+  public static void reseed() {
+    JITTER_RANDOM.setSeed(new SecureRandom().nextLong());
+  }
+
+  /** Default policy from RETRY_* and MAX_ATTEMPTS. */
+  public static RetryPolicy fromEnv() {
+    String delays = System.getenv("RETRY_DELAYS_SECONDS") != null
+        ? System.getenv("RETRY_DELAYS_SECONDS")
+        : "60,300,900,3600,21600";
+    return new RetryPolicy(
+        parseJitter(System.getenv("RETRY_JITTER"), Jitter.FULL),
+        delays.isBlank() ? null
+            : Arrays.stream(delays.split(",")).map(String::trim).mapToInt(Integer::parseInt)
+                .toArray(),
+        Integer.parseInt(System.getenv("RETRY_BASE_DELAY_SECONDS") != null
+            ? System.getenv("RETRY_BASE_DELAY_SECONDS")
+            : "60"),
+        Double.parseDouble(System.getenv("RETRY_MULTIPLIER") != null
+            ? System.getenv("RETRY_MULTIPLIER")
+            : "2"),
+        Integer.parseInt(System.getenv("RETRY_MAX_DELAY_SECONDS") != null
+            ? System.getenv("RETRY_MAX_DELAY_SECONDS")
+            : "21600"),
+        Integer.parseInt(System.getenv("MAX_ATTEMPTS") != null
+            ? System.getenv("MAX_ATTEMPTS")
+            : "5"));
+  }
+
+  /**
+   * The policy for a delivery of {@code eventType} to {@code endpoint}: the endpoint's override
+   * on top of this policy, and the endpoint's override for the event type on top of that.
+   */
+  public RetryPolicy resolve(WebhookEndpoint endpoint, String eventType) {
+    if (endpoint == null) {
+      return this;
+    }
+    RetryPolicy policy = this;
+    if (endpoint.getRetryPolicy() != null) {
+      policy = policy.withOverrides(endpoint.getRetryPolicy());
+    }
+    Map<String, RetryPolicyConfig> byEventType = endpoint.getRetryPolicyByEventType();
+    if (byEventType != null && eventType != null && byEventType.get(eventType) != null) {
+      policy = policy.withOverrides(byEventType.get(eventType));
+    }
+    return policy;
+  }
+
+  public RetryPolicy withOverrides(RetryPolicyConfig config) {
+    int[] delays = this.delaysSeconds;
+    if (config.getDelaysSeconds() != null && !config.getDelaysSeconds().isEmpty()) {
+      delays = config.getDelaysSeconds().stream().mapToInt(Integer::intValue).toArray();
+    } else if (config.getBaseDelaySeconds() != null || config.getMultiplier() != null) {
+      // An exponential override replaces an inherited explicit curve
+      delays = null;
+    }
+    return new RetryPolicy(
+        parseJitter(config.getJitter(), jitter),
+        delays,
+        config.getBaseDelaySeconds() != null ? config.getBaseDelaySeconds() : baseDelaySeconds,
+        config.getMultiplier() != null ? config.getMultiplier() : multiplier,
+        config.getMaxDelaySeconds() != null ? config.getMaxDelaySeconds() : maxDelaySeconds,
+        config.getMaxAttempts() != null ? config.getMaxAttempts() : maxAttempts);
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  public Jitter getJitter() {
+    return jitter;
+  }
+
+  /**
+   * Delay before the attempt after {@code attemptCount}, in seconds.
+   *
+   * @param previousDelaySeconds the delay that preceded {@code attemptCount}, or {@code null} if
+   *        unknown; only used by decorrelated jitter
+   */
+  public int nextDelaySeconds(int attemptCount, Integer previousDelaySeconds) {
+    int delay = curveSeconds(attemptCount);
+    switch (jitter) {
+      case FULL:
+        return 1 + JITTER_RANDOM.nextInt(Math.max(1, delay));
+      case DECORRELATED:
+        int lower = Math.max(1, curveSeconds(1));
+        int previous = previousDelaySeconds != null ? previousDelaySeconds
+            : attemptCount > 1 ? curveSeconds(attemptCount - 1) : lower;
+        long upper = Math.max(lower, Math.min(maxDelaySeconds, 3L * previous));
+        return (int) JITTER_RANDOM.nextLong(lower, upper + 1);
+      default:
+        return delay;
+    }
+  }
+
+  private int curveSeconds(int attemptCount) {
+    int n = Math.max(1, attemptCount);
+    double delay = delaysSeconds != null
+        ? delaysSeconds[Math.min(n - 1, delaysSeconds.length - 1)]
+        : baseDelaySeconds * Math.pow(multiplier, n - 1);
+    return (int) Math.max(1, Math.min(maxDelaySeconds, delay));
+  }
+
+  /** {@code value} as a jitter, or {@code inherited} if it is missing or not one. */
+  private static Jitter parseJitter(String value, Jitter inherited) {
+    if (value == null || value.isBlank()) {
+      return inherited;
+    }
+    try {
+      return Jitter.valueOf(value.trim().toUpperCase());
+    } catch (IllegalArgumentException e) {
+      log.warn("retry.policy").with("jitter", value).with("inherited", inherited)
+          .log("Unknown retry jitter, using the inherited one");
+      return inherited;
+    }
+  }
+}
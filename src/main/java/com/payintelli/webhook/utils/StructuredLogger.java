@@ -0,0 +1,198 @@
+package com.payintelli.webhook.utils;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.spi.LoggingEventBuilder;
+
+/**
+ * Key/value logging over slf4j. An entry is started with a level and a category, e.g.
+ * {@code log.info("delivery.success").with("deliveryId", id).log("Delivered")}, and is only built
+ * if its level is enabled and, for DEBUG and INFO, the category's sample rate lets it through.
+ * WARN and ERROR entries are never sampled. Field values are rendered when the backend writes the
+ * entry, so a dropped entry costs no string building.
+ *
+ * <p>Values of keys that look like credentials ({@code secret}, {@code password},
+ * {@code authorization}) are never written, and payload bodies ({@code payload}, {@code body},
+ * {@code data}) are written as their length only.
+ *
+ * <p>Configured through the environment: {@code LOG_LEVEL} sets the slf4j-simple default level,
+ * {@code LOG_SAMPLE_RATE} is the sample rate of categories without their own, and
+ * {@code LOG_SAMPLE_RATES} lists per category rates as {@code category=rate,...}.
+ */
+public final class StructuredLogger {
+  private static final String REDACTED = "[redacted]";
+  private static final String[] CREDENTIAL_KEYS = {"secret", "password", "authorization"};
+  private static final String[] PAYLOAD_KEYS = {"payload", "body", "data"};
+
+  private static final double DEFAULT_SAMPLE_RATE;
+  private static final Map<String, Double> SAMPLE_RATES;
+
+  static {
+    // slf4j-simple reads its level once, when the first logger is created
+    if (System.getenv("LOG_LEVEL") != null
+        && System.getProperty("org.slf4j.simpleLogger.defaultLogLevel") == null) {
+      System.setProperty("org.slf4j.simpleLogger.defaultLogLevel",
+          System.getenv("LOG_LEVEL").toLowerCase(Locale.ROOT));
+    }
+    DEFAULT_SAMPLE_RATE = Double.parseDouble(System.getenv("LOG_SAMPLE_RATE") != null
+        ? System.getenv("LOG_SAMPLE_RATE")
+        : "1");
+    SAMPLE_RATES = parseSampleRates(System.getenv("LOG_SAMPLE_RATES"));
+  }
+
+  private final Logger logger;
+
+  private StructuredLogger(Logger logger) {
+    this.logger = logger;
+  }
+
+  public static StructuredLogger getLogger(Class<?> type) {
+    return new StructuredLogger(LoggerFactory.getLogger(type));
+  }
+
+  public Entry debug(String category) {
+    return logger.isDebugEnabled() ? sampled(logger.atDebug(), category) : Entry.DISABLED;
+  }
+
+  public Entry info(String category) {
+    return logger.isInfoEnabled() ? sampled(logger.atInfo(), category) : Entry.DISABLED;
+  }
+
+  public Entry warn(String category) {
+    return logger.isWarnEnabled() ? new Entry(logger.atWarn(), category) : Entry.DISABLED;
+  }
+
+  public Entry error(String category) {
+    return logger.isErrorEnabled() ? new Entry(logger.atError(), category) : Entry.DISABLED;
+  }
+
+  private static Entry sampled(LoggingEventBuilder builder, String category) {
+    double rate = sampleRate(category);
+    if (rate >= 1) {
+      return new Entry(builder, category);
+    }
+    if (rate <= 0 || ThreadLocalRandom.current().nextDouble() >= rate) {
+      return Entry.DISABLED;
+    }
+    // Lets counts taken from the logs be scaled back up
+    return new Entry(builder, category).with("sampleRate", rate);
+  }
+
+  private static double sampleRate(String category) {
+    return SAMPLE_RATES.getOrDefault(category, DEFAULT_SAMPLE_RATE);
+  }
+
+  private static Map<String, Double> parseSampleRates(String value) {
+    Map<String, Double> rates = new HashMap<>();
+    if (value == null || value.isBlank()) {
+      return rates;
+    }
+    for (String pair : value.split(",")) {
+      int separator = pair.indexOf('=');
+      if (separator > 0) {
+        rates.put(pair.substring(0, separator).trim(),
+            Double.parseDouble(pair.substring(separator + 1).trim()));
+      }
+    }
+    return rates;
+  }
+
+  /** A log entry being built. Every method is a no-op on an entry that won't be written. */
+  public static final class Entry {
+    private static final Entry DISABLED = new Entry(null, null);
+
+    private final LoggingEventBuilder builder;
+
+    private Entry(LoggingEventBuilder builder, String category) {
+      this.builder = builder;
+      if (builder != null) {
+        builder.addKeyValue("category", category);
+      }
+    }
+
+    public Entry with(String key, Object value) {
+      if (builder != null) {
+        builder.addKeyValue(key, new Field(key, value));
+      }
+      return this;
+    }
+
+    public Entry with(String key, long value) {
+      if (builder != null) {
+        builder.addKeyValue(key, value);
+      }
+      return this;
+    }
+
+    /** A field whose value is only computed if the entry is written. */
+    public Entry with(String key, Supplier<?> value) {
+      if (builder != null) {
+        builder.addKeyValue(key, new Field(key, value.get()));
+      }
+      return this;
+    }
+
+    public Entry cause(Throwable cause) {
+      if (builder != null) {
+        builder.setCause(cause);
+      }
+      return this;
+    }
+
+    public void log(String message) {
+      if (builder != null) {
+        builder.log(message);
+      }
+    }
+  }
+
+  /** A field value, redacted and quoted when the backend renders it. */
+  private record Field(String key, Object value) {
+    @Override
+    public String toString() {
+      if (value == null) {
+        return "null";
+      }
+      String lowerKey = key.toLowerCase(Locale.ROOT);
+      for (String credential : CREDENTIAL_KEYS) {
+        if (lowerKey.contains(credential)) {
+          return REDACTED;
+        }
+      }
+      for (String payload : PAYLOAD_KEYS) {
+        if (lowerKey.equals(payload)) {
+          return value instanceof CharSequence text ? "[" + text.length() + " chars]" : REDACTED;
+        }
+      }
+      return quote(value.toString());
+    }
+
+    private static String quote(String text) {
+      boolean plain = !text.isEmpty();
+      for (int i = 0; i < text.length() && plain; i++) {
+        char c = text.charAt(i);
+        plain = c > ' ' && c != '"' && c != '=';
+      }
+      if (plain) {
+        return text;
+      }
+      StringBuilder quoted = new StringBuilder(text.length() + 8).append('"');
+      for (int i = 0; i < text.length(); i++) {
+        char c = text.charAt(i);
+        switch (c) {
+          case '"' -> quoted.append("\\\"");
+          case '\\' -> quoted.append("\\\\");
+          case '\n' -> quoted.append("\\n");
+          case '\r' -> quoted.append("\\r");
+          default -> quoted.append(c);
+        }
+      }
+      return quoted.append('"').toString();
+    }
+  }
+}
@@ -8,12 +8,16 @@ import java.util.HexFormat;
 public class WebhookSignatureUtils {
 
   public static String generateSignature(String payload, String secret) throws Exception {
+    return generateSignature(payload.getBytes(StandardCharsets.UTF_8), secret);
+  }
+
+  public static String generateSignature(byte[] payload, String secret) throws Exception {
     Mac mac = Mac.getInstance("HmacSHA256");
     SecretKeySpec secretKeySpec =
         new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
     mac.init(secretKeySpec);
 
-    byte[] hash = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+    byte[] hash = mac.doFinal(payload);
     return HexFormat.of().formatHex(hash);
   }
 
@@ -0,0 +1,70 @@
+package com.payintelli.webhook.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * HMAC-SHA256 signer that keeps one initialized Mac per endpoint. Each signature works on a
+ * clone of that prototype, so concurrent deliveries never share Mac state and the key schedule
+ * is computed once per secret. An entry is replaced as soon as the endpoint's secret changes.
+ */
+public class WebhookSigner {
+  private static final String ALGORITHM = "HmacSHA256";
+  private static final int MAX_ENTRIES = 10000;
+  private static final HexFormat HEX = HexFormat.of();
+
+  private final Map<Long, SignerEntry> entries = new ConcurrentHashMap<>();
+
+  /** Hex encoded HMAC of {@code payload}. */
+  public String sign(Long endpointId, String secret, byte[] payload)
+      throws GeneralSecurityException {
+    Mac mac = macFor(endpointId, secret);
+    return HEX.formatHex(mac.doFinal(payload));
+  }
+
+  /**
+   * Timestamped signature header value {@code t=<unix seconds>,v1=<hex>}, where v1 is the HMAC
+   * of {@code "<t>." + payload}. Receivers can reject stale timestamps to prevent replays.
+   */
+  public String signTimestamped(Long endpointId, String secret, long timestamp, byte[] payload)
+      throws GeneralSecurityException {
+    String t = Long.toString(timestamp);
+    Mac mac = macFor(endpointId, secret);
+    mac.update(t.getBytes(StandardCharsets.US_ASCII));
+    mac.update((byte) '.');
+    return "t=" + t + ",v1=" + HEX.formatHex(mac.doFinal(payload));
+  }
+
+  private Mac macFor(Long endpointId, String secret) throws GeneralSecurityException {
+    SignerEntry entry = endpointId != null ? entries.get(endpointId) : null;
+    if (entry == null || !entry.secret().equals(secret)) {
+      entry = new SignerEntry(secret, newMac(secret));
+      if (endpointId != null) {
+        if (entries.size() >= MAX_ENTRIES) {
+          entries.clear();
+        }
+        entries.put(endpointId, entry);
+      }
+    }
+
+    try {
+      return (Mac) entry.prototype().clone();
+    } catch (CloneNotSupportedException e) {
+      return newMac(secret);
+    }
+  }
+
+  private static Mac newMac(String secret) throws GeneralSecurityException {
+    Mac mac = Mac.getInstance(ALGORITHM);
+    mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+    return mac;
+  }
+
+  private record SignerEntry(String secret, Mac prototype) {
+  }
+}
@@ -0,0 +1,44 @@
+package com.payintelli.webhook.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+
+public class DeliveryBatchAccumulatorTest {
+
+  private final DeliveryBatchAccumulator<String> accumulator = new DeliveryBatchAccumulator<>();
+
+  @Test
+  public void handsBackAGroupOnceItReachesMaxCount() {
+    assertTrue(accumulator.add(1L, "a", 10, 3, 1000).isEmpty());
+    assertTrue(accumulator.add(1L, "b", 10, 3, 1000).isEmpty());
+
+    assertEquals(List.of(List.of("a", "b", "c")), accumulator.add(1L, "c", 10, 3, 1000));
+    assertTrue(accumulator.drainAll().isEmpty());
+  }
+
+  @Test
+  public void startsANewGroupRatherThanExceedMaxBytes() {
+    assertTrue(accumulator.add(1L, "a", 60, 10, 100).isEmpty());
+
+    assertEquals(List.of(List.of("a")), accumulator.add(1L, "b", 60, 10, 100));
+    assertEquals(List.of(List.of("b")), accumulator.drainAll());
+  }
+
+  @Test
+  public void anItemAsLargeAsMaxBytesIsABatchOnItsOwn() {
+    assertEquals(List.of(List.of("a")), accumulator.add(1L, "a", 100, 10, 100));
+  }
+
+  @Test
+  public void groupsPerEndpointUntilDrained() {
+    accumulator.add(1L, "a", 10, 10, 1000);
+    accumulator.add(2L, "b", 10, 10, 1000);
+    accumulator.add(1L, "c", 10, 10, 1000);
+
+    assertEquals(List.of(List.of("a", "c"), List.of("b")), accumulator.drainAll());
+    assertTrue(accumulator.drainAll().isEmpty());
+  }
+}
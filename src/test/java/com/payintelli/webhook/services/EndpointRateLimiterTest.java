@@ -0,0 +1,83 @@
+package com.payintelli.webhook.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import com.payintelli.webhook.models.WebhookEndpoint;
+
+public class EndpointRateLimiterTest {
+
+  private final EndpointRateLimiter limiter = new EndpointRateLimiter();
+
+  @Test
+  public void allowsTheBurstThenThrottles() {
+    WebhookEndpoint endpoint = endpoint(1L, 1.0, 3);
+    for (int i = 0; i < 3; i++) {
+      assertEquals(0, limiter.acquire(endpoint));
+    }
+    long wait = limiter.acquire(endpoint);
+    assertTrue("wait " + wait, wait > 0 && wait <= 1000);
+  }
+
+  @Test
+  public void refundGivesTheTokenBack() {
+    WebhookEndpoint endpoint = endpoint(2L, 1.0, 1);
+    assertEquals(0, limiter.acquire(endpoint));
+    limiter.refund(endpoint);
+    assertEquals(0, limiter.acquire(endpoint));
+  }
+
+  @Test
+  public void overloadHalvesTheRateOncePerRoundTrip() {
+    WebhookEndpoint endpoint = endpoint(3L, 10.0, 10);
+    limiter.acquire(endpoint);
+
+    // Requests in flight together all report the same overload
+    limiter.onResponse(endpoint, 429, 1000, null);
+    limiter.onResponse(endpoint, 429, 1000, null);
+    limiter.onError(endpoint, 1000);
+    assertEquals(5.0, limiter.getCurrentRate(3L), 1e-9);
+  }
+
+  @Test
+  public void healthyResponsesRecoverUpToTheConfiguredRate() {
+    WebhookEndpoint endpoint = endpoint(4L, 10.0, 10);
+    limiter.acquire(endpoint);
+    limiter.onResponse(endpoint, 503, 10, null);
+    assertEquals(5.0, limiter.getCurrentRate(4L), 1e-9);
+
+    limiter.onResponse(endpoint, 200, 10, null);
+    assertEquals(5.5, limiter.getCurrentRate(4L), 1e-9);
+    for (int i = 0; i < 100; i++) {
+      limiter.onResponse(endpoint, 200, 10, null);
+    }
+    assertEquals(10.0, limiter.getCurrentRate(4L), 1e-9);
+  }
+
+  @Test
+  public void retryAfterBlocksTheEndpoint() {
+    WebhookEndpoint endpoint = endpoint(5L, 100.0, 100);
+    limiter.acquire(endpoint);
+    limiter.onResponse(endpoint, 429, 10, "30");
+
+    long wait = limiter.acquire(endpoint);
+    assertTrue("wait " + wait, wait > 29_000 && wait <= 30_001);
+  }
+
+  @Test
+  public void parsesRetryAfterSecondsAndRejectsGarbage() {
+    assertEquals(120_000, EndpointRateLimiter.parseRetryAfter(" 120 "));
+    assertEquals(-1, EndpointRateLimiter.parseRetryAfter("soon"));
+    assertEquals(-1, EndpointRateLimiter.parseRetryAfter(null));
+    assertEquals(0, EndpointRateLimiter.parseRetryAfter("Mon, 01 Jan 2001 00:00:00 GMT"));
+  }
+
+  private static WebhookEndpoint endpoint(Long id, double rate, int burst) {
+    WebhookEndpoint endpoint = new WebhookEndpoint();
+    endpoint.setId(id);
+    endpoint.setRateLimitPerSecond(rate);
+    endpoint.setRateLimitBurst(burst);
+    return endpoint;
+  }
+}
@@ -0,0 +1,61 @@
+package com.payintelli.webhook.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import org.junit.Test;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.payintelli.webhook.models.WebhookEndpoint;
+
+public class EndpointRoutingIndexTest {
+
+  private final WebhookEndpoint captured = endpoint(1L, "client-a", "[\"payment.captured\"]");
+  private final WebhookEndpoint anyPayment = endpoint(2L, "client-a", "[\"payment.*\"]");
+  private final WebhookEndpoint anyAction = endpoint(3L, "client-a", "[\"*.refunded\"]");
+  private final WebhookEndpoint otherClient = endpoint(4L, "client-b", "[\"payment.captured\"]");
+
+  private final EndpointRoutingIndex index = EndpointRoutingIndex.build(
+      List.of(captured, anyPayment, anyAction, otherClient), new ObjectMapper());
+
+  @Test
+  public void matchesExactAndWildcardSubscriptionsOfTheClient() {
+    assertEquals(List.of(captured, anyPayment), index.find("client-a", "payment.captured"));
+    assertEquals(List.of(anyPayment, anyAction), index.find("client-a", "payment.refunded"));
+    assertEquals(List.of(otherClient), index.find("client-b", "payment.captured"));
+  }
+
+  @Test
+  public void trailingWildcardNeedsAtLeastOneSegment() {
+    assertTrue(index.find("client-a", "payment").isEmpty());
+    assertEquals(List.of(anyPayment), index.find("client-a", "payment.captured.partial"));
+  }
+
+  @Test
+  public void innerWildcardMatchesExactlyOneSegment() {
+    assertTrue(index.find("client-a", "refunded").isEmpty());
+    assertTrue(index.find("client-a", "order.payment.refunded").isEmpty());
+  }
+
+  @Test
+  public void skipsInactiveEndpointsAndUnparseableEvents() {
+    WebhookEndpoint inactive = endpoint(5L, "client-c", "[\"payment.captured\"]");
+    inactive.setIsActive(false);
+    WebhookEndpoint substring = endpoint(6L, "client-c", "payment.captured");
+    EndpointRoutingIndex index =
+        EndpointRoutingIndex.build(List.of(inactive, substring), new ObjectMapper());
+
+    assertTrue(index.find("client-c", "payment.captured").isEmpty());
+    assertTrue(index.find("unknown", "payment.captured").isEmpty());
+    assertTrue(index.find("client-c", null).isEmpty());
+  }
+
+  private static WebhookEndpoint endpoint(Long id, String clientId, String events) {
+    WebhookEndpoint endpoint = new WebhookEndpoint();
+    endpoint.setId(id);
+    endpoint.setClientId(clientId);
+    endpoint.setEvents(events);
+    endpoint.setIsActive(true);
+    return endpoint;
+  }
+}
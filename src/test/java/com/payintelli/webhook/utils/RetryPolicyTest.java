@@ -0,0 +1,102 @@
+package com.payintelli.webhook.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import com.payintelli.webhook.models.RetryPolicyConfig;
+import com.payintelli.webhook.models.WebhookEndpoint;
+
+/** Runs against the defaults of {@link RetryPolicy#fromEnv()}; RETRY_* must not be set. */
+public class RetryPolicyTest {
+
+  private final RetryPolicy defaults = RetryPolicy.fromEnv();
+
+  @Test
+  public void explicitCurveRepeatsItsLastDelay() {
+    RetryPolicy policy = defaults.withOverrides(config("none"));
+
+    int[] expected = {60, 300, 900, 3600, 21600, 21600};
+    for (int attempt = 1; attempt <= expected.length; attempt++) {
+      assertEquals(expected[attempt - 1], policy.nextDelaySeconds(attempt, null));
+    }
+  }
+
+  @Test
+  public void exponentialOverrideReplacesInheritedCurveAndIsCapped() {
+    RetryPolicyConfig config = config("none");
+    config.setBaseDelaySeconds(10);
+    config.setMultiplier(3.0);
+    config.setMaxDelaySeconds(100);
+    RetryPolicy policy = defaults.withOverrides(config);
+
+    assertEquals(10, policy.nextDelaySeconds(1, null));
+    assertEquals(30, policy.nextDelaySeconds(2, null));
+    assertEquals(90, policy.nextDelaySeconds(3, null));
+    assertEquals(100, policy.nextDelaySeconds(4, null));
+  }
+
+  @Test
+  public void eventTypeOverrideAppliesOnTopOfEndpointOverride() {
+    RetryPolicyConfig endpointConfig = config("none");
+    endpointConfig.setMaxAttempts(8);
+    RetryPolicyConfig refundConfig = new RetryPolicyConfig();
+    refundConfig.setDelaysSeconds(List.of(5, 10));
+    WebhookEndpoint endpoint = new WebhookEndpoint();
+    endpoint.setRetryPolicy(endpointConfig);
+    endpoint.setRetryPolicyByEventType(Map.of("payment.refunded", refundConfig));
+
+    RetryPolicy refunds = defaults.resolve(endpoint, "payment.refunded");
+    assertEquals(8, refunds.getMaxAttempts());
+    assertEquals(RetryPolicy.Jitter.NONE, refunds.getJitter());
+    assertEquals(5, refunds.nextDelaySeconds(1, null));
+    assertEquals(10, refunds.nextDelaySeconds(3, null));
+
+    RetryPolicy others = defaults.resolve(endpoint, "payment.captured");
+    assertEquals(60, others.nextDelaySeconds(1, null));
+    assertEquals(5, defaults.resolve(null, "payment.captured").getMaxAttempts());
+  }
+
+  @Test
+  public void fullJitterStaysBetweenOneSecondAndTheCurve() {
+    RetryPolicy policy = defaults.withOverrides(config("full"));
+    for (int i = 0; i < 1000; i++) {
+      int delay = policy.nextDelaySeconds(2, null);
+      assertTrue("delay " + delay, delay >= 1 && delay <= 300);
+    }
+  }
+
+  @Test
+  public void decorrelatedJitterStaysBetweenFirstDelayAndThreeTimesPrevious() {
+    RetryPolicy policy = defaults.withOverrides(config("decorrelated"));
+    for (int i = 0; i < 1000; i++) {
+      int delay = policy.nextDelaySeconds(3, 200);
+      assertTrue("delay " + delay, delay >= 60 && delay <= 600);
+    }
+    // Never above the cap, however long the previous delay was
+    for (int i = 0; i < 1000; i++) {
+      int delay = policy.nextDelaySeconds(5, 20000);
+      assertTrue("delay " + delay, delay >= 60 && delay <= 21600);
+    }
+  }
+
+  @Test
+  public void unknownJitterInheritsTheBroaderPolicy() {
+    assertEquals(RetryPolicy.Jitter.FULL,
+        defaults.withOverrides(config("exponential")).getJitter());
+
+    WebhookEndpoint endpoint = new WebhookEndpoint();
+    endpoint.setRetryPolicy(config("none"));
+    endpoint.setRetryPolicyByEventType(Map.of("payment.refunded", config("bogus")));
+    assertEquals(RetryPolicy.Jitter.NONE,
+        defaults.resolve(endpoint, "payment.refunded").getJitter());
+  }
+
+  private static RetryPolicyConfig config(String jitter) {
+    RetryPolicyConfig config = new RetryPolicyConfig();
+    config.setJitter(jitter);
+    return config;
+  }
+}